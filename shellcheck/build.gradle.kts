@@ -71,6 +71,12 @@ val functionalTest = tasks.register("functionalTest", Test::class) {
     }
 }
 
+tasks.named<Test>("test") {
+    useJUnitPlatform()
+    // Keeps the heap small enough for any regression buffering process output to fail the tests
+    maxHeapSize = "256m"
+}
+
 tasks.named("check").configure {
     dependsOn(functionalTest)
 }
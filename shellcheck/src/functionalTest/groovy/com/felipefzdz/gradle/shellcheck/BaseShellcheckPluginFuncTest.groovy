@@ -1,6 +1,12 @@
 package com.felipefzdz.gradle.shellcheck
 
+import com.sun.net.httpserver.HttpServer
+import org.apache.commons.io.FileUtils
 import org.gradle.testkit.runner.TaskOutcome
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentHashMap
 
 abstract class BaseShellcheckPluginFuncTest extends BaseInfraTest {
 
@@ -53,6 +59,26 @@ shellcheck {
         assert report.contains("script_with_violations_wrong_extension.txt");
     }
 
+    def "check the scripts of a working dir reached through a symlink"() {
+        given:
+        Files.createSymbolicLink(new File(testProjectDir.root, "linked").toPath(), resources.toPath())
+        buildFile << """
+shellcheck {
+    sources = files("linked/with_violations")
+    workingDir.set(file("linked"))
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        def result = runner().buildAndFail()
+
+        then:
+        !result.output.contains("Shellcheck could not check")
+        result.output.contains("Shellcheck files with violations: 8")
+    }
+
     def "pass the build when no script in the folder has violations"() {
         given:
         buildFile << """
@@ -145,6 +171,141 @@ ls /etc
         runnerWithBuildCache().build().task(":shellcheck").outcome == TaskOutcome.SUCCESS
     }
 
+    def "only check again the scripts changed since the last execution"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/without_violations", "${resources.absolutePath}/another_without_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        expect:
+        runnerWithDebugLogging().build().output.contains("Shellcheck will analyse 3 of 3 files")
+
+        when:
+        new File("${resources.absolutePath}/without_violations/script_without_violations.sh") << "ls /"
+
+        then:
+        runnerWithDebugLogging().build().output.contains("Shellcheck will analyse 1 of 3 files")
+    }
+
+    def "only check again the scripts sourcing a changed library"() {
+        given:
+        def scripts = new File(testProjectDir.root, "scripts")
+        def library = new File(testProjectDir.root, "lib/common.sh")
+        library.parentFile.mkdirs()
+        scripts.mkdirs()
+        library << "#!/usr/bin/env bash\n\nls /etc\n"
+        new File(scripts, "sourcing.sh") << "#!/usr/bin/env bash\n\n# shellcheck source=lib/common.sh\nsource \"\$LIB_DIR/common.sh\"\n"
+        new File(scripts, "standalone.sh") << "#!/usr/bin/env bash\n\nls /etc\n"
+        buildFile << """
+shellcheck {
+    sources = files("scripts")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        expect:
+        runnerWithDebugLogging().build().output.contains("Shellcheck will analyse 2 of 2 files")
+
+        when:
+        library << "ls /\n"
+
+        then:
+        runnerWithDebugLogging().build().output.contains("Shellcheck will analyse 1 of 2 files")
+    }
+
+    def "reuse the results shared by another machine through a folder"() {
+        given:
+        def sharedStore = testProjectDir.newFolder("shared-store")
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/without_violations", "${resources.absolutePath}/another_without_violations")
+    sharedStore = "${sharedStore.absolutePath}"
+    isSharedStorePush = true
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        expect:
+        runnerWithDebugLogging().build().output.contains("Shellcheck will analyse 3 of 3 files")
+
+        when:
+        new File(testProjectDir.root, "build").deleteDir()
+
+        then:
+        def output = runnerWithDebugLogging().build().output
+        output.contains("Shellcheck reused the results of 3 files from the shared store")
+        output.contains("Shellcheck will analyse 0 of 3 files")
+    }
+
+    def "only add results to the shared store when sharedStorePush is set"() {
+        given:
+        def sharedStore = testProjectDir.newFolder("shared-store")
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/without_violations")
+    sharedStore = "${sharedStore.absolutePath}"
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        runner().build()
+
+        then:
+        sharedStore.list().length == 0
+    }
+
+    def "reuse the results shared by another machine through an HTTP server"() {
+        given:
+        def entries = new ConcurrentHashMap<String, byte[]>()
+        def server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+        server.createContext("/shellcheck/") { exchange ->
+            if (exchange.requestMethod == "PUT") {
+                entries[exchange.requestURI.path] = exchange.requestBody.bytes
+                exchange.sendResponseHeaders(201, -1)
+            } else if (entries.containsKey(exchange.requestURI.path)) {
+                exchange.sendResponseHeaders(200, entries[exchange.requestURI.path].length)
+                exchange.responseBody.write(entries[exchange.requestURI.path])
+            } else {
+                exchange.sendResponseHeaders(404, -1)
+            }
+            exchange.close()
+        }
+        server.start()
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    sharedStore = "http://localhost:${server.address.port}/shellcheck"
+    isSharedStorePush = true
+    isIgnoreFailures = true
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        expect:
+        runnerWithDebugLogging().build().output.contains("Shellcheck will analyse 8 of 8 files")
+        entries.size() == 8
+
+        when:
+        new File(testProjectDir.root, "build").deleteDir()
+        def result = runnerWithDebugLogging().build()
+
+        then:
+        result.output.contains("Shellcheck will analyse 0 of 8 files")
+        result.output.contains("Shellcheck files with violations: 8")
+
+        cleanup:
+        server?.stop(0)
+    }
+
     def "pass the build when some scripts in the folder have violations and ignoreFailures is passed"() {
         given:
         buildFile << """
@@ -263,6 +424,415 @@ shellcheck {
         new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.txt").exists()
     }
 
+    def "reuse the configuration cache and discover scripts added since it was stored"() {
+        given:
+        def scripts = new File(testProjectDir.root, "scripts")
+        FileUtils.copyDirectory(new File(resources, "without_violations"), scripts)
+        buildFile << """
+shellcheck {
+    sources = files("scripts")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    severity = providers.gradleProperty("shellcheckSeverity").orElse("style")
+}
+"""
+
+        when:
+        runner(false, false, true).build()
+        def reused = runner(false, false, true).build()
+
+        then:
+        reused.output.contains("Reusing configuration cache.")
+        reused.task(":shellcheck").outcome == TaskOutcome.UP_TO_DATE
+
+        when:
+        FileUtils.copyFile(new File(resources, "with_violations/script_with_violations.sh"), new File(scripts, "added.sh"))
+        def result = runner(false, false, true).buildAndFail()
+
+        then:
+        !result.output.contains("Reusing configuration cache.")
+        result.output.contains("Shellcheck files with violations: 1")
+    }
+
+    def "check again the scripts changed while watching them"() {
+        given:
+        def scripts = new File(testProjectDir.root, "scripts")
+        FileUtils.copyDirectory(new File(resources, "without_violations"), scripts)
+        buildFile << """
+shellcheck {
+    sources = files("scripts")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+tasks.named<com.felipefzdz.gradle.shellcheck.ShellcheckWatch>("shellcheckWatch") {
+    idleTimeout = java.time.Duration.ofSeconds(5)
+}
+"""
+        def report = new File(testProjectDir.root, "build/reports/shellcheck/watch/shellcheck.xml")
+        def result = null
+
+        when:
+        def watch = Thread.start { result = runner().withArguments("shellcheckWatch", "--info").build() }
+        new PollingConditions(timeout: 120).eventually {
+            assert report.isFile()
+        }
+        sleep(1000)
+        FileUtils.copyFile(new File(resources, "with_violations/script_with_violations.sh"), new File(scripts, "added.sh"))
+        watch.join()
+
+        then:
+        result.output.contains("Shellcheck will analyse 2 of 2 files")
+        result.output.contains("Shellcheck will analyse 1 of 3 files")
+        result.output.contains("Shellcheck stopped watching after 5 seconds without changes")
+        report.text.contains("added.sh")
+    }
+
+    def "only check the scripts changed since a git revision"() {
+        given:
+        def scripts = new File(testProjectDir.root, "scripts")
+        FileUtils.copyDirectory(new File(resources, "with_violations"), scripts)
+        git("init", "-q", "-b", "main")
+        git("add", "-A")
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "base")
+        git("checkout", "-q", "-b", "feature")
+        new File(scripts, "script_with_violations.sh") << "\necho done\n"
+        git("rm", "-q", "scripts/script_with_violations.ksh")
+        FileUtils.copyFile(new File(resources, "with_violations/script_with_violations.bash"), new File(scripts, "added.bash"))
+        buildFile << """
+shellcheck {
+    sources = files("scripts")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    changedSince = "main"
+}
+"""
+
+        when:
+        def result = runner().buildAndFail()
+
+        then:
+        result.getOutput().contains("Shellcheck files with violations: 2")
+        def report = new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.xml").text
+        report.contains("script_with_violations.sh")
+        report.contains("added.bash")
+        !report.contains("script_with_violations.bashrc")
+    }
+
+    def "only report the violations on the lines changed since a git revision"() {
+        given:
+        def scripts = new File(testProjectDir.root, "scripts")
+        FileUtils.copyDirectory(new File(resources, "with_violations"), scripts)
+        git("init", "-q", "-b", "main")
+        git("add", "-A")
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "base")
+        new File(scripts, "script_with_violations.sh") << "\necho done\n"
+        buildFile << """
+shellcheck {
+    sources = files("scripts")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    changedSince = "main"
+    isChangedLinesOnly = true
+}
+"""
+
+        when:
+        def result = runner().build()
+
+        then:
+        !result.getOutput().contains("Shellcheck violations were found")
+    }
+
+    def "report the violations on the lines changed since a git revision in a script whose name has a space"() {
+        given:
+        def scripts = new File(testProjectDir.root, "scripts")
+        scripts.mkdirs()
+        def script = new File(scripts, "my script.sh")
+        script.text = "#!/bin/sh\necho done\n"
+        git("init", "-q", "-b", "main")
+        git("add", "-A")
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "base")
+        script << "echo \$1\n"
+        buildFile << """
+shellcheck {
+    sources = files("scripts")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    changedSince = "main"
+    isChangedLinesOnly = true
+}
+"""
+
+        when:
+        def result = runner().buildAndFail()
+
+        then:
+        result.getOutput().contains("Shellcheck files with violations: 1")
+        new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.xml").text.contains('line="3"')
+    }
+
+    def "check every script when the changes since a git revision cannot be found"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        def result = runner().withArguments("shellcheck", "-Pshellcheck.changedSince=main").buildAndFail()
+
+        then:
+        result.getOutput().contains("Shellcheck will check every script")
+        result.getOutput().contains("Shellcheck files with violations: 8")
+    }
+
+    def "probe shellcheck only once for every task of the build"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    isIgnoreFailures = true
+}
+
+val shellcheckAgain by tasks.registering(com.felipefzdz.gradle.shellcheck.Shellcheck::class)
+tasks.named("shellcheck") {
+    dependsOn(shellcheckAgain)
+}
+"""
+
+        when:
+        def output = runner().withArguments("shellcheck", "--info").build().getOutput()
+
+        then:
+        output.count("Probed Shellcheck") == 1
+    }
+
+    def "analyse every script only once for tasks of different severities"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    isIgnoreFailures = true
+}
+
+val shellcheckErrors by tasks.registering(com.felipefzdz.gradle.shellcheck.Shellcheck::class) {
+    severity = "error"
+    reports {
+        xml.outputLocation = layout.buildDirectory.file("reports/shellcheckErrors/shellcheck.xml")
+        txt.outputLocation = layout.buildDirectory.file("reports/shellcheckErrors/shellcheck.txt")
+        html.required = false
+    }
+}
+tasks.named("shellcheck") {
+    dependsOn(shellcheckErrors)
+}
+"""
+
+        when:
+        def output = runner().withArguments("shellcheck", "--info").build().getOutput()
+
+        then:
+        output.contains("Shellcheck reused the results of 8 files analysed by other tasks")
+        output.contains("Shellcheck files with violations: 1")
+        output.contains("Shellcheck files with violations: 8")
+        new File(testProjectDir.root, "build/reports/shellcheckErrors/shellcheck.xml").text.contains('severity="error"')
+        !new File(testProjectDir.root, "build/reports/shellcheckErrors/shellcheck.xml").text.contains('severity="info"')
+    }
+
+    def "aggregate the reports of the given projects without checking the scripts again"() {
+        given:
+        new File(testProjectDir.root, "settings.gradle") << "include 'sub'\n"
+        testProjectDir.newFolder("sub")
+        new File(testProjectDir.root, "sub/build.gradle.kts") << """
+plugins {
+    id("com.felipefzdz.gradle.shellcheck")
+}
+
+shellcheck {
+    sourceFiles = fileTree("${resources.absolutePath}/with_violations") {
+        include("script_with_violations_wrong_extension.txt")
+    }
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    isIgnoreFailures = true
+}
+"""
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    isIgnoreFailures = true
+}
+
+dependencies {
+    shellcheckAggregation(project(":"))
+    shellcheckAggregation(project(":sub"))
+}
+"""
+
+        when:
+        def result = runner().withArguments(":shellcheckAggregateReport", "--build-cache").build()
+
+        then:
+        result.task(":shellcheckAggregateReport").outcome == TaskOutcome.SUCCESS
+        result.output.contains("in 9 files from 2 reports")
+        def summary = new groovy.json.JsonSlurper().parse(new File(testProjectDir.root, "build/reports/shellcheck/aggregate/shellcheck.json"))
+        summary.reports == 2
+        summary.filesWithViolations == 9
+        new File(testProjectDir.root, "build/reports/shellcheck/aggregate/shellcheck.html").text.contains("script_with_violations_wrong_extension.txt")
+
+        when:
+        new File(testProjectDir.root, "build/reports/shellcheck/aggregate").deleteDir()
+        result = runner().withArguments(":shellcheckAggregateReport", "--build-cache").build()
+
+        then:
+        result.task(":shellcheck").outcome == TaskOutcome.UP_TO_DATE
+        result.task(":sub:shellcheck").outcome == TaskOutcome.UP_TO_DATE
+        result.task(":shellcheckAggregateReport").outcome == TaskOutcome.FROM_CACHE
+    }
+
+    def "fail before checking any script when the shellcheck binary is missing"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = false
+    shellcheckBinary = "/does/not/exist/shellcheck"
+}
+"""
+
+        expect:
+        runner().buildAndFail().getOutput().contains("Shellcheck binary /does/not/exist/shellcheck not found or not executable")
+    }
+
+    def "generate an html page for every file with violations"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        runner().buildAndFail()
+
+        then:
+        def pages = new File(testProjectDir.root, "build/reports/shellcheck/shellcheck").listFiles()
+        pages.size() == 8
+        def page = pages.find { it.name.endsWith("-script_with_violations.ksh.html") }
+        page.text.contains("SC2086")
+        new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.html").text.contains("shellcheck/${page.name}")
+    }
+
+    def "generate the metrics report only when required"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+
+tasks.withType<com.felipefzdz.gradle.shellcheck.Shellcheck>().configureEach {
+    reports {
+        metrics.required = true
+    }
+}
+"""
+
+        when:
+        runner().buildAndFail()
+
+        then:
+        def metrics = new groovy.json.JsonSlurper().parse(new File(testProjectDir.root, "build/reports/shellcheck/shellcheck-metrics.json"))
+        metrics.task == ":shellcheck"
+        ["installation", "probe", "discovery", "shellcheck", "parse", "summary"].each {
+            assert metrics.phases.containsKey(it)
+        }
+        metrics.files.size() == 8
+        metrics.files.every { it.bytes > 0 && !it.reused }
+        def openMetrics = new File(testProjectDir.root, "build/reports/shellcheck/shellcheck-metrics.txt").text
+        openMetrics.contains('shellcheck_phase_seconds{task=":shellcheck",phase="shellcheck"}')
+        openMetrics.endsWith("# EOF\n")
+    }
+
+    def "run shellcheck only once to generate every report"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    maxParallelShards = 1
+}
+"""
+
+        when:
+        def output = runnerWithDebugLogging().buildAndFail().output
+
+        then:
+        output.count("Command to run Shellcheck") == 1
+
+        and:
+        def txtReport = new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.txt").text
+        txtReport.contains("script_with_violations.sh")
+        txtReport.contains("For more information:")
+        new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.xml").text.contains("source=\"ShellCheck.SC")
+    }
+
+    def "split the scripts in shards checked in parallel"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    maxParallelShards = 3
+}
+"""
+
+        when:
+        def output = runnerWithDebugLogging().buildAndFail().output
+
+        then:
+        output.contains("Shellcheck will run 3 shards for 8 files")
+        output.count("Command to run Shellcheck") == 3
+        output.contains("Shellcheck files with violations: 8")
+        output.contains("Shellcheck violations by severity: 3")
+        new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.xml").text.count("<file ") == 8
+    }
+
+    def "check scripts in batches of up to maxFilesPerInvocation"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    maxParallelShards = 1
+    maxFilesPerInvocation = 3
+}
+"""
+
+        when:
+        def output = runnerWithDebugLogging().buildAndFail().output
+
+        then:
+        output.count("Command to run Shellcheck") == 3
+        output.contains("Shellcheck files with violations: 8")
+        output.contains("Shellcheck violations by severity: 3")
+    }
+
     def "filtrates by severity"() {
         given:
         buildFile << """
@@ -281,4 +851,93 @@ shellcheck {
         result.getOutput().contains("Shellcheck files with violations: 1")
         result.getOutput().contains("Shellcheck violations by severity: 1")
     }
+
+    def "detect scripts without extension by their shebang"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/extensionless")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        def result = runner().buildAndFail()
+
+        then:
+        result.getOutput().contains("Shellcheck files with violations: 1")
+
+        def report = new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.html").text
+        report.contains("extensionless/run")
+        !report.contains("extensionless/NOTES")
+    }
+
+    def "leave out the scripts matching the excludes"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    excludes = ["**/*_2.sh", "*.ksh"]
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        def result = runner().buildAndFail()
+
+        then:
+        result.getOutput().contains("Shellcheck files with violations: 6")
+
+        def report = new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.html").text
+        !report.contains("script_with_violations_2.sh")
+        !report.contains("script_with_violations.ksh")
+    }
+
+    def "pass the build when violations stay within maxErrors and maxWarnings"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    maxErrors = 100
+    maxWarnings = 100
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        def result = runner().build()
+
+        then:
+        result.getOutput().contains("Shellcheck files with violations: 8")
+    }
+
+    def "stop checking scripts as soon as the thresholds are exceeded with failFast"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    isFailFast = true
+    maxParallelShards = 1
+    maxFilesPerInvocation = 1
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+}
+"""
+
+        when:
+        def result = runner().buildAndFail()
+
+        then:
+        result.getOutput().contains("Shellcheck stopped as soon as the thresholds were exceeded")
+        new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.xml").exists()
+    }
+
+    private void git(String... arguments) {
+        def process = (["git"] + arguments.toList()).execute(null, testProjectDir.root)
+        process.waitForProcessOutput(System.out, System.err)
+        assert process.exitValue() == 0
+    }
 }
@@ -0,0 +1,63 @@
+package com.felipefzdz.gradle.shellcheck
+
+import spock.lang.IgnoreIf
+
+import java.security.MessageDigest
+
+@IgnoreIf({ env['SHELLCHECK_PATH'] == null })
+class ShellcheckArchiveInstallerFuncTest extends BaseInfraTest {
+    boolean useDocker = false
+    String shellcheckBinary = "/does/not/exist/shellcheck"
+
+    File archive
+    String sha256
+
+    def setup() {
+        def release = testProjectDir.newFolder("release", "shellcheck-v0.7.1")
+        new File(release, "shellcheck").bytes = new File(System.getenv('SHELLCHECK_PATH')).bytes
+        archive = new File(testProjectDir.root, "release/shellcheck.tar.gz")
+        ["tar", "czf", archive.absolutePath, "-C", release.parentFile.absolutePath, "shellcheck-v0.7.1"].execute().waitForProcessOutput()
+        sha256 = MessageDigest.getInstance("SHA-256").digest(archive.bytes).encodeHex().toString()
+    }
+
+    def "provision shellcheck from an archive only once"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    shellcheckBinary = "$shellcheckBinary"
+    installer = "archive"
+    shellcheckArchive = "${archive.absolutePath}"
+    shellcheckArchiveSha256 = "$sha256"
+}
+"""
+
+        when:
+        def firstOutput = runner().buildAndFail().getOutput()
+        def secondOutput = runnerWithDebugLogging().withArguments("shellcheck", "--rerun-tasks", "--debug").buildAndFail().getOutput()
+
+        then:
+        firstOutput.contains("Provisioning Shellcheck from ${archive.absolutePath}")
+        firstOutput.contains("Shellcheck files with violations: 8")
+        !secondOutput.contains("Provisioning Shellcheck from")
+        secondOutput.contains("Skipping installation.")
+        secondOutput.contains("Shellcheck files with violations: 8")
+    }
+
+    def "refuse an archive not matching its checksum"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = $useDocker
+    installer = "archive"
+    shellcheckArchive = "${archive.absolutePath}"
+    shellcheckArchiveSha256 = "${'0' * 64}"
+}
+"""
+
+        expect:
+        runner().buildAndFail().getOutput().contains("Error while provisioning Shellcheck: the SHA-256 of ${archive.absolutePath} is $sha256")
+    }
+}
@@ -1,9 +1,117 @@
 package com.felipefzdz.gradle.shellcheck
 
 import spock.lang.IgnoreIf
+import spock.lang.Requires
 
 @IgnoreIf({ env['SHELLCHECK_PATH'] == null })
 class ShellcheckBinaryPluginFuncTest extends BaseShellcheckPluginFuncTest {
     boolean useDocker = false
     String shellcheckBinary = System.getenv('SHELLCHECK_PATH')
+
+    def "isolate the script shellcheck gets stuck on when a batch runs past the invocationTimeout"() {
+        given:
+        def stuck = new File(resources, "with_violations").listFiles().sort()[0]
+        def wrapper = testProjectDir.newFile("stuck-shellcheck")
+        wrapper.text = """#!/bin/sh
+for argument in "\$@"; do
+    [ "\$argument" = "${stuck.absolutePath}" ] && sleep 60
+done
+exec "$shellcheckBinary" "\$@"
+"""
+        wrapper.executable = true
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = false
+    shellcheckBinary = "${wrapper.absolutePath}"
+    maxParallelShards = 1
+    invocationTimeout = java.time.Duration.ofSeconds(5)
+}
+"""
+
+        when:
+        def output = runner().buildAndFail().output
+
+        then:
+        output.contains("Shellcheck did not finish checking 8 files within the invocationTimeout of 5000 ms, checking them again in two halves")
+        output.contains("Shellcheck did not finish checking ${stuck.absolutePath} within the invocationTimeout of 5000 ms")
+    }
+
+    def "never run more shellcheck processes at once than maxProcesses across every project of the build"() {
+        given:
+        def lock = new File(testProjectDir.root, "running")
+        def overlaps = new File(testProjectDir.root, "overlaps.log")
+        def calls = new File(testProjectDir.root, "calls.log")
+        def wrapper = testProjectDir.newFile("exclusive-shellcheck")
+        wrapper.text = """#!/bin/sh
+case "\$*" in *--version*|*--help*) exec "$shellcheckBinary" "\$@" ;; esac
+mkdir "${lock.absolutePath}" 2>/dev/null || echo "\$*" >> "${overlaps.absolutePath}"
+echo "\$*" >> "${calls.absolutePath}"
+sleep 1
+"$shellcheckBinary" "\$@"
+status=\$?
+rmdir "${lock.absolutePath}" 2>/dev/null
+exit \$status
+"""
+        wrapper.executable = true
+        new File(testProjectDir.root, "settings.gradle") << "include 'first', 'second'\n"
+        ["first", "second"].each {
+            testProjectDir.newFolder(it)
+            new File(testProjectDir.root, "$it/build.gradle.kts") << """
+plugins {
+    id("com.felipefzdz.gradle.shellcheck")
+}
+
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = false
+    shellcheckBinary = "${wrapper.absolutePath}"
+    maxParallelShards = 2
+    maxFilesPerInvocation = 2
+    isIgnoreFailures = true
+    // Tells the processes of each project apart
+    additionalArguments = "${it == 'second' ? '-a' : ''}"
+}
+"""
+        }
+
+        when:
+        runner().withArguments(":first:shellcheck", ":second:shellcheck", "--parallel", "--max-workers=4", "-Pshellcheck.maxProcesses=1").build()
+
+        then:
+        // Both projects ran several processes of their own
+        calls.readLines().count { it.contains(" -a ") } > 1
+        calls.readLines().count { !it.contains(" -a ") } > 1
+        !overlaps.exists()
+    }
+
+    // Root reads the script regardless of its permissions
+    @Requires({ System.getProperty("user.name") != "root" })
+    def "fail rather than store an unreadable script as clean"() {
+        given:
+        def script = new File(resources, "with_violations").listFiles().sort()[0]
+        script.readable = false
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/with_violations")
+    useDocker = false
+    shellcheckBinary = "$shellcheckBinary"
+    isIgnoreFailures = true
+}
+"""
+
+        when:
+        def output = runner().buildAndFail().output
+
+        then:
+        output.contains("Shellcheck could not check some of")
+        output.contains(script.absolutePath)
+
+        when:
+        script.readable = true
+        runner().build()
+
+        then:
+        new File(testProjectDir.root, "build/reports/shellcheck/shellcheck.xml").text.contains("name=\"${script.absolutePath}\"")
+    }
 }
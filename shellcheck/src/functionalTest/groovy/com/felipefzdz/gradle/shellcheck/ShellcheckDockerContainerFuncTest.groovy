@@ -0,0 +1,76 @@
+package com.felipefzdz.gradle.shellcheck
+
+import org.gradle.testkit.runner.GradleRunner
+
+class ShellcheckDockerContainerFuncTest extends BaseInfraTest {
+
+    boolean useDocker = false
+    String shellcheckBinary = "shellcheck"
+
+    File dockerLog
+
+    def setup() {
+        dockerLog = new File(testProjectDir.root, "docker.log")
+        def fakeDocker = new File(testProjectDir.newFolder("fake-bin"), "docker")
+        fakeDocker << """#!/usr/bin/env bash
+echo "\$*" >> "${dockerLog.absolutePath}"
+case "\$*" in
+  "run -d"*) echo "0123456789abcdef" ;;
+  run*|exec*) echo '{"comments":[]}' ;;
+esac
+"""
+        fakeDocker.setExecutable(true)
+    }
+
+    def "reuse a single container per build when reuseDockerContainer is enabled"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/without_violations", "${resources.absolutePath}/another_without_violations")
+    useDocker = true
+    reuseDockerContainer = true
+    maxParallelShards = 3
+}
+
+tasks.register<com.felipefzdz.gradle.shellcheck.Shellcheck>("anotherShellcheck")
+"""
+
+        when:
+        runnerWithFakeDocker("shellcheck", "anotherShellcheck").build()
+
+        then:
+        def invocations = dockerLog.readLines()
+        invocations.count { it.startsWith("run -d") } == 1
+        invocations.count { it.startsWith("exec ") } == 6
+        invocations.last() == "rm -f 0123456789abcdef"
+    }
+
+    def "start a container per shellcheck invocation by default"() {
+        given:
+        buildFile << """
+shellcheck {
+    sources = files("${resources.absolutePath}/without_violations")
+    useDocker = true
+    maxParallelShards = 1
+}
+"""
+
+        when:
+        runnerWithFakeDocker("shellcheck").build()
+
+        then:
+        def invocations = dockerLog.readLines()
+        invocations.size() == 1
+        invocations.first().startsWith("run --rm ")
+    }
+
+    private GradleRunner runnerWithFakeDocker(String... tasks) {
+        runner()
+                .withArguments(tasks.toList() + "--stacktrace")
+                .withDebug(false)
+                .withEnvironment([
+                        "PATH": new File(testProjectDir.root, "fake-bin").absolutePath + File.pathSeparator + System.getenv("PATH"),
+                        "HOME": System.getenv("HOME")
+                ])
+    }
+}
@@ -0,0 +1,10 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import javax.inject.Inject;
+
+abstract class DefaultShellcheckMetricsReport extends DefaultShellcheckReport implements ShellcheckMetricsReport {
+    @Inject
+    public DefaultShellcheckMetricsReport(String name) {
+        super(name);
+    }
+}
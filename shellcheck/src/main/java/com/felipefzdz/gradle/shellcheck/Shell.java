@@ -2,41 +2,192 @@ package com.felipefzdz.gradle.shellcheck;
 
 import org.gradle.api.logging.Logger;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static java.util.Arrays.asList;
 
 public class Shell {
+
+    private static final int MAX_STDERR = 64 * 1024;
+    private static final long KILL_GRACE_SECONDS = 5;
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "shellcheck-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Reads the stdout of a process as it is produced.
+     */
+    interface OutputConsumer {
+        void consume(InputStream stdout) throws IOException;
+    }
+
+    /**
+     * The outcome of a process whose stdout has been streamed to an {@link OutputConsumer}.
+     */
+    static class Result {
+        private final int exitCode;
+        private final String stderr;
+
+        Result(int exitCode, String stderr) {
+            this.exitCode = exitCode;
+            this.stderr = stderr;
+        }
+
+        int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * What the process printed to stderr, trimmed and truncated to its first 64KB.
+         */
+        String getStderr() {
+            return stderr;
+        }
+    }
+
+    /**
+     * Thrown when a process is destroyed for not finishing in time.
+     */
+    static class TimeoutException extends IOException {
+        TimeoutException(String message) {
+            super(message);
+        }
+    }
+
     static String run(String command, File projectDir, Logger logger) throws IOException, InterruptedException {
         return run(asList(command.split("\\s+")), projectDir, logger);
     }
+
+    /**
+     * Runs a command with a short output, returning its stdout followed by its stderr, trimmed.
+     */
     static String run(List<String> command, File workingDir, Logger logger) throws IOException, InterruptedException {
-        ProcessBuilder builder = new ProcessBuilder(command)
-                .directory(workingDir)
-                .redirectOutput(ProcessBuilder.Redirect.PIPE)
-                .redirectErrorStream(true);
-        prepareEnvironment(logger, builder.environment());
+        final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        final Result result = stream(command, workingDir, logger, in -> copy(in, stdout, Integer.MAX_VALUE));
+        final String output = new String(stdout.toByteArray(), StandardCharsets.UTF_8).trim();
+        return result.getStderr().isEmpty() ? output : (output + System.lineSeparator() + result.getStderr()).trim();
+    }
 
-        builder.redirectErrorStream(true);
+    /**
+     * Runs a command handing its stdout over to the given consumer as it is produced, so that it never has to be held
+     * in memory. Stderr is collected apart, in the background, and returned along with the exit code. Whatever the
+     * consumer leaves unread is discarded.
+     */
+    static Result stream(List<String> command, File workingDir, Logger logger, OutputConsumer consumer) throws IOException, InterruptedException {
+        return stream(command, workingDir, logger, consumer, process -> {
+        });
+    }
+
+    /**
+     * Same as {@link #stream(List, File, Logger, OutputConsumer)}, letting the caller know about the process as soon as
+     * it has been started, e.g. to be able to destroy it.
+     */
+    static Result stream(List<String> command, File workingDir, Logger logger, OutputConsumer consumer, Consumer<Process> started) throws IOException, InterruptedException {
+        return stream(command, workingDir, logger, consumer, started, 0);
+    }
+
+    /**
+     * Same as {@link #stream(List, File, Logger, OutputConsumer, Consumer)}, destroying the process along with its
+     * descendants and throwing a {@link TimeoutException} when it runs for longer than {@code timeoutNanos}. Zero means
+     * no timeout.
+     */
+    static Result stream(List<String> command, File workingDir, Logger logger, OutputConsumer consumer, Consumer<Process> started,
+                         long timeoutNanos) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).directory(workingDir);
+        prepareEnvironment(logger, builder.environment());
 
         Process process = builder.start();
+        started.accept(process);
+        process.getOutputStream().close();
+        final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        final Thread stderrReader = new Thread(() -> {
+            try (InputStream in = process.getErrorStream()) {
+                copy(in, stderr, MAX_STDERR);
+            } catch (IOException e) {
+                logger.debug("Unable to read the stderr of " + command.get(0), e);
+            }
+        }, "shellcheck-stderr");
+        stderrReader.setDaemon(true);
+        stderrReader.start();
 
-        StringBuilder processOutput = new StringBuilder();
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final ScheduledFuture<?> watchdog = timeoutNanos > 0 ? WATCHDOG.schedule(() -> {
+            timedOut.set(true);
+            destroyTree(process);
+        }, timeoutNanos, TimeUnit.NANOSECONDS) : null;
+        try {
+            try (InputStream stdout = process.getInputStream()) {
+                consumer.consume(stdout);
+                copy(stdout, null, 0);
+            } catch (IOException | RuntimeException e) {
+                process.destroyForcibly();
+                if (timedOut.get()) {
+                    throw timeout(command, timeoutNanos);
+                }
+                throw e;
+            }
+            final int exitCode = process.waitFor();
+            stderrReader.join();
+            if (timedOut.get()) {
+                throw timeout(command, timeoutNanos);
+            }
+            return new Result(exitCode, new String(stderr.toByteArray(), StandardCharsets.UTF_8).trim());
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+        }
+    }
+
+    private static TimeoutException timeout(List<String> command, long timeoutNanos) {
+        return new TimeoutException(String.format("%s did not finish within %d ms", command.get(0), TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+    }
+
+    /**
+     * Destroys the descendants of a process, which would otherwise keep its output open, and asks the process to stop,
+     * destroying it forcibly if it is still alive after a grace period. Asking first lets {@code docker run} stop its
+     * container before exiting. Descendants are only known from Java 9 on, so older runtimes leave them out.
+     */
+    private static void destroyTree(Process process) {
+        try {
+            final Method destroyForcibly = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+            for (Object descendant : ((Stream<?>) Process.class.getMethod("descendants").invoke(process)).toArray()) {
+                destroyForcibly.invoke(descendant);
+            }
+        } catch (ReflectiveOperationException e) {
+            // Java 8
+        }
+        process.destroy();
+        WATCHDOG.schedule(process::destroyForcibly, KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+    }
 
-        try (BufferedReader processOutputReader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()))) {
-            String readLine;
-            while ((readLine = processOutputReader.readLine()) != null) {
-                processOutput.append(readLine).append(System.lineSeparator());
+    /**
+     * Reads the whole stream, keeping up to {@code limit} bytes in {@code out} and discarding the rest.
+     */
+    private static void copy(InputStream in, ByteArrayOutputStream out, int limit) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out != null && out.size() < limit) {
+                out.write(buffer, 0, Math.min(read, limit - out.size()));
             }
-            process.waitFor();
         }
-        return processOutput.toString().trim();
     }
 
     private static void prepareEnvironment(Logger logger, final Map<String, String> environment) {
@@ -3,15 +3,21 @@ package com.felipefzdz.gradle.shellcheck;
 import groovy.lang.Closure;
 import groovy.lang.DelegatesTo;
 import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
-import org.gradle.api.internal.ConventionTask;
+import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Console;
-import org.gradle.api.tasks.IgnoreEmptyDirectories;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.LocalState;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.PathSensitive;
@@ -19,29 +25,42 @@ import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.VerificationTask;
 import org.gradle.util.ClosureBackedAction;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkerExecutor;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 @CacheableTask
-public abstract class Shellcheck extends ConventionTask implements VerificationTask {
-
-    private FileCollection sources;
-    private FileCollection sourceFiles;
+public abstract class Shellcheck extends DefaultTask implements VerificationTask {
 
+    private final ConfigurableFileCollection discoveredSources;
+    private final ConfigurableFileCollection sourcedFiles;
+    private final ConfigurableFileCollection rcFiles;
     private final ShellcheckReports reports;
-    private boolean showViolations = true;
-    private boolean ignoreFailures = false;
-    private boolean useDocker = true;
-    private String shellcheckVersion;
-    private String severity;
-    private String shellcheckBinary;
-    private String installer;
-    private File workingDir;
-    private String additionalArguments;
 
     public Shellcheck() {
         this.reports = (ShellcheckReports) getObjectFactory().newInstance(ShellcheckReportsImpl.class);
+        this.discoveredSources = getObjectFactory().fileCollection().from((Callable<List<File>>) () ->
+                ShellcheckSources.isNullOrEmpty(getSources()) ? Collections.emptyList() : ShellcheckSourceDiscovery.of(this).discover(getSources().getFiles()));
+        this.discoveredSources.finalizeValueOnRead();
+        this.sourcedFiles = getObjectFactory().fileCollection().from(getProviders().of(ShellcheckSourceGraph.Sourced.class, spec -> {
+            spec.getParameters().getScripts().from(discoveredSources, getSourceFiles());
+            spec.getParameters().getStoreDir().set(getProjectLayout().getBuildDirectory().dir("shellcheck/" + getName()));
+            spec.getParameters().getWorkingDir().set(getWorkingDir());
+            spec.getParameters().getAdditionalArguments().set(getAdditionalArguments());
+        }));
+        this.sourcedFiles.finalizeValueOnRead();
+        this.rcFiles = getObjectFactory().fileCollection().from((Callable<Set<File>>) () ->
+                ShellcheckRcFiles.of(this).rcfilesOf(ShellcheckSources.resolve(this)));
+        this.rcFiles.finalizeValueOnRead();
+        getGitChanges().finalizeValueOnRead();
     }
 
     @Inject
@@ -49,32 +68,138 @@ public abstract class Shellcheck extends ConventionTask implements VerificationT
         throw new UnsupportedOperationException();
     }
 
+    @Inject
+    protected ProviderFactory getProviders() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected ProjectLayout getProjectLayout() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
     @TaskAction
-    public void run() {
-        ShellcheckInvoker.invoke(this);
+    public void run(InputChanges inputChanges) {
+        ShellcheckInvoker.invoke(this, inputChanges);
     }
 
+    /**
+     * The folders to search for shell scripts. The scripts found in them are tracked through {@link #getDiscoveredSources()}.
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getSources();
+
+    /**
+     * The shell scripts found in {@link #getSources()}, according to the configured extensions, includes, excludes and
+     * shebang detection. They are searched only once per execution.
+     */
+    @Incremental
     @InputFiles
     @PathSensitive(PathSensitivity.RELATIVE)
-    @IgnoreEmptyDirectories
-    @Optional
-    public FileCollection getSources() {
-        return sources;
+    public FileCollection getDiscoveredSources() {
+        return discoveredSources;
     }
 
-    public void setSources(FileCollection sources) {
-        this.sources = sources;
+    /**
+     * The files sourced by the scripts, directly or through other sourced files, so that the scripts depending on a
+     * file are checked again when it changes. They are found through {@code source} and {@code .} commands and
+     * {@code # shellcheck source=} directives.
+     */
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getSourcedFiles() {
+        return sourcedFiles;
     }
 
+    /**
+     * The shellcheckrc files read by shellcheck for the scripts. They are not tracked incrementally, as a change to one
+     * of them can change the results of every script.
+     */
     @InputFiles
     @PathSensitive(PathSensitivity.RELATIVE)
-    @Optional
-    public FileCollection getSourceFiles() {
-        return sourceFiles;
+    public FileCollection getRcFiles() {
+        return rcFiles;
     }
 
-    public void setSourceFiles(FileCollection sourceFiles) {
-        this.sourceFiles = sourceFiles;
+    /**
+     * The extensions of the files in {@link #getSources()} to be considered shell scripts.
+     */
+    @Input
+    public abstract ListProperty<String> getScriptExtensions();
+
+    /**
+     * Ant style patterns, relative to every folder in {@link #getSources()}, the scripts have to match. All the scripts
+     * are included when empty.
+     */
+    @Input
+    public abstract ListProperty<String> getIncludes();
+
+    /**
+     * Ant style patterns, relative to every folder in {@link #getSources()}, of the scripts to leave out.
+     */
+    @Input
+    public abstract ListProperty<String> getExcludes();
+
+    /**
+     * Whether files without extension in {@link #getSources()} are considered shell scripts when their shebang points
+     * to sh, bash, dash or ksh.
+     */
+    @Input
+    public abstract Property<Boolean> getShebangDetection();
+
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @Optional
+    public abstract ConfigurableFileCollection getSourceFiles();
+
+    /**
+     * A git revision, e.g. {@code origin/main}, to only check the scripts added or modified since then according to
+     * the local git repository. Every script is checked when not set, or when git is not available.
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getChangedSince();
+
+    /**
+     * Whether to only report the violations on the lines changed since {@link #getChangedSince()}.
+     */
+    @Input
+    public abstract Property<Boolean> getChangedLinesOnly();
+
+    /**
+     * The files changed since {@link #getChangedSince()}, found through git when the task runs.
+     */
+    @Input
+    @Optional
+    public abstract Property<ShellcheckGitChanges> getGitChanges();
+
+    /**
+     * A folder or an HTTP URL where the results of every checked script are shared with other machines, e.g. every
+     * agent of a CI pipeline. None when empty.
+     */
+    @Internal
+    public abstract Property<String> getSharedStore();
+
+    /**
+     * Whether the results of the scripts checked by this task are added to {@link #getSharedStore()}.
+     */
+    @Internal
+    public abstract Property<Boolean> getSharedStorePush();
+
+    /**
+     * Where the results of every checked script are kept between executions, so that only changed scripts need to be
+     * checked again.
+     */
+    @LocalState
+    public File getResultStoreDir() {
+        return getProjectLayout().getBuildDirectory().dir("shellcheck/" + getName()).get().getAsFile();
     }
 
     /**
@@ -133,98 +258,141 @@ public abstract class Shellcheck extends ConventionTask implements VerificationT
 
     /**
      * Whether rule violations are to be displayed on the console.
-     *
-     * @return true if violations should be displayed on console
      */
     @Console
-    public boolean isShowViolations() {
-        return showViolations;
-    }
-
-    /**
-     * Whether rule violations are to be displayed on the console.
-     *
-     * @param showViolations
-     */
-    public void setShowViolations(boolean showViolations) {
-        this.showViolations = showViolations;
-    }
+    public abstract Property<Boolean> getShowViolations();
 
     @Input
-    public String getShellcheckVersion() {
-        return shellcheckVersion;
-    }
+    public abstract Property<String> getShellcheckVersion();
 
-    public void setShellcheckVersion(String shellcheckVersion) {
-        this.shellcheckVersion = shellcheckVersion;
-    }
+    /**
+     * Whether the build goes on when violations exceed {@code maxErrors} or {@code maxWarnings}.
+     */
+    @Internal
+    public abstract Property<Boolean> getIgnoreFailuresProperty();
 
     @Override
     public void setIgnoreFailures(boolean ignoreFailures) {
-        this.ignoreFailures = ignoreFailures;
-    }
-
-    @Internal
-    public boolean isIgnoreFailures() {
-        return ignoreFailures;
+        getIgnoreFailuresProperty().set(ignoreFailures);
     }
 
+    @Input
     @Override
     public boolean getIgnoreFailures() {
-        return ignoreFailures;
+        return getIgnoreFailuresProperty().get();
     }
 
     @Input
-    public String getSeverity() {
-        return severity;
-    }
-
-    public void setSeverity(String severity) {
-        this.severity = severity;
-    }
+    public abstract Property<String> getSeverity();
 
     @Internal
-    public File getWorkingDir() {
-        return workingDir;
-    }
+    public abstract DirectoryProperty getWorkingDir();
 
-    public void setWorkingDir(File workingDir) {
-        this.workingDir = workingDir;
-    }
+    @Input
+    public abstract Property<Boolean> getUseDocker();
 
     @Input
-    public boolean isUseDocker() {
-        return useDocker;
-    }
+    public abstract Property<String> getShellcheckBinary();
 
-    public void setUseDocker(boolean useDocker) {
-        this.useDocker = useDocker;
-    }
+    @Input
+    public abstract Property<String> getInstaller();
 
     @Input
-    public String getShellcheckBinary() {
-        return shellcheckBinary;
-    }
+    public abstract Property<String> getShellcheckArchive();
 
-    public void setShellcheckBinary(String shellcheckBinary) {
-        this.shellcheckBinary = shellcheckBinary;
-    }
+    @Input
+    public abstract Property<String> getShellcheckArchiveSha256();
+
+    /**
+     * The folder shellcheck is provisioned to by the archive installer, shared by every build run on the machine.
+     * Defaults to the {@code shellcheck} folder of the Gradle user home.
+     */
+    @Internal
+    public abstract DirectoryProperty getProvisioningDir();
 
     @Input
-    public String getInstaller() {
-        return installer;
-    }
+    public abstract Property<String> getAdditionalArguments();
 
-    public void setInstaller(String installer) {
-        this.installer = installer;
-    }
+    /**
+     * The maximum amount of shards the scripts are split into, each of them checked by a separate shellcheck process
+     * running in parallel with the rest.
+     */
+    @Internal
+    public abstract Property<Integer> getMaxParallelShards();
+
+    /**
+     * The maximum amount of scripts checked by a single shellcheck process, or zero to only bound them by the maximum
+     * command line length.
+     */
+    @Internal
+    public abstract Property<Integer> getMaxFilesPerInvocation();
+
+    /**
+     * How long a single shellcheck process may run before it is destroyed, its scripts being checked again in halves to
+     * find the ones shellcheck gets stuck on.
+     */
+    @Internal
+    public abstract Property<Duration> getInvocationTimeout();
 
+    /**
+     * How long all the shellcheck processes of this task may run, after which the ones still running are destroyed.
+     */
+    @Internal
+    public abstract Property<Duration> getTaskTimeout();
+
+    /**
+     * The maximum number of violations with error severity that are tolerated before the build fails.
+     */
     @Input
-    public String getAdditionalArguments() {
-        return additionalArguments;
-    }
+    public abstract Property<Integer> getMaxErrors();
 
-    public void setAdditionalArguments(String additionalArguments) {
-        this.additionalArguments = additionalArguments;
-    }
+    /**
+     * The maximum number of violations with warning, info or style severity that are tolerated before the build fails.
+     */
+    @Input
+    public abstract Property<Integer> getMaxWarnings();
+
+    /**
+     * Whether to stop checking scripts as soon as {@code maxErrors} or {@code maxWarnings} is exceeded, failing the
+     * build with the reports written so far. Ignored if {@code ignoreFailures} is true.
+     */
+    @Internal
+    public abstract Property<Boolean> getFailFast();
+
+    /**
+     * Whether shellcheck runs inside a single container started once per build, instead of a new container per
+     * shellcheck invocation. Ignored if {@code useDocker} is false.
+     */
+    @Internal
+    public abstract Property<Boolean> getReuseDockerContainer();
+
+    /**
+     * The build service holding the containers reused across shellcheck invocations.
+     */
+    @Internal
+    public abstract Property<ShellcheckDockerContainers> getDockerContainers();
+
+    /**
+     * The build service compiling the custom stylesheets of HTML reports.
+     */
+    @Internal
+    public abstract Property<ShellcheckStylesheets> getStylesheets();
+
+    /**
+     * The build service probing the shellcheck binary or Docker image once per build.
+     */
+    @Internal
+    public abstract Property<ShellcheckProbes> getProbes();
+
+    /**
+     * The build service limiting the amount of shellcheck processes running at the same time across the build.
+     */
+    @Internal
+    public abstract Property<ShellcheckProcessSlots> getProcessSlots();
+
+    /**
+     * The build service sharing the results of the scripts analysed by every Shellcheck task of the build.
+     */
+    @Internal
+    public abstract Property<ShellcheckResultMemo> getResultMemo();
 }
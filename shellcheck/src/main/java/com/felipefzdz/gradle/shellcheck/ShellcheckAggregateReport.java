@@ -0,0 +1,157 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.internal.logging.ConsoleRenderer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Merges the checkstyle reports written by the Shellcheck tasks of several projects into a single checkstyle XML and
+ * HTML report, plus a JSON summary, without running shellcheck again.
+ * <p>
+ * Reports are read one file element at a time and written as they are read, so memory does not grow with the amount of
+ * violations. A script checked by several projects is reported once, as found in the first report listing it. Reports
+ * are read in the order of their content, as their fingerprint leaves their paths and order out, so that the same
+ * reports always make the same aggregate report. There is no text report, as rendering it reads the scripts, which are
+ * not inputs of this task.
+ */
+@CacheableTask
+public abstract class ShellcheckAggregateReport extends DefaultTask {
+
+    private static final String SOURCE_PREFIX = "ShellCheck.SC";
+
+    /**
+     * The checkstyle reports to merge. Missing reports, e.g. from projects disabling the XML report, are left out.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract ConfigurableFileCollection getResults();
+
+    /**
+     * Where to write {@code shellcheck.xml}, {@code shellcheck.html}, its pages and {@code shellcheck.json}.
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+    @TaskAction
+    public void aggregate() {
+        final File destinationDir = getDestinationDir().get().getAsFile();
+        final File html = new File(destinationDir, "shellcheck.html");
+        final Set<String> files = new HashSet<>();
+        final Map<String, Integer> severities = new TreeMap<>();
+        final Map<String, Integer> rules = new TreeMap<>();
+        int reports = 0;
+        int violations = 0;
+        final Map<File, String> digests = new HashMap<>();
+        for (File report : getResults().getFiles()) {
+            if (report.isFile()) {
+                digests.put(report, ShellcheckResultStore.toHex(ShellcheckResultStore.digestOf(report)));
+            } else {
+                getLogger().info("Shellcheck report {} not found, leaving it out of the aggregate report", report);
+            }
+        }
+        final List<File> ordered = new ArrayList<>(digests.keySet());
+        ordered.sort(Comparator.comparing(digests::get));
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            // Without a text report the writer never reads the scripts, hence no working directory
+            try (ShellcheckReportWriter writer = new ShellcheckReportWriter(new File(destinationDir, "shellcheck.xml"), null, null,
+                    new ShellcheckHtmlWriter(html, new File(destinationDir, "shellcheck")), null, new ShellcheckMetrics(false))) {
+                for (File report : ordered) {
+                    reports++;
+                    try (InputStream in = Files.newInputStream(report.toPath())) {
+                        final XMLStreamReader xml = factory.createXMLStreamReader(in);
+                        String file = null;
+                        List<ShellcheckViolation> fileViolations = new ArrayList<>();
+                        while (xml.hasNext()) {
+                            final int event = xml.next();
+                            if (event == XMLStreamConstants.START_ELEMENT && "file".equals(xml.getLocalName())) {
+                                file = xml.getAttributeValue(null, "name");
+                                fileViolations = new ArrayList<>();
+                            } else if (event == XMLStreamConstants.START_ELEMENT && "error".equals(xml.getLocalName()) && file != null) {
+                                fileViolations.add(violationOf(file, xml));
+                            } else if (event == XMLStreamConstants.END_ELEMENT && "file".equals(xml.getLocalName()) && file != null) {
+                                if (files.add(file)) {
+                                    writer.write(file, fileViolations);
+                                    for (ShellcheckViolation violation : fileViolations) {
+                                        severities.merge(violation.getLevel(), 1, Integer::sum);
+                                        rules.merge(violation.getRule(), 1, Integer::sum);
+                                        violations++;
+                                    }
+                                }
+                                file = null;
+                            }
+                        }
+                        xml.close();
+                    }
+                }
+            }
+            writeSummary(new File(destinationDir, "shellcheck.json"), reports, files.size(), violations, severities, rules);
+        } catch (IOException | XMLStreamException e) {
+            throw new GradleException("Error while aggregating the Shellcheck reports", e);
+        }
+        getLogger().lifecycle("Shellcheck aggregated {} violations in {} files from {} reports. See the report at: {}",
+                violations, files.size(), reports, new ConsoleRenderer().asClickableFileUrl(html));
+    }
+
+    private static ShellcheckViolation violationOf(String file, XMLStreamReader xml) {
+        final int line = intOf(xml.getAttributeValue(null, "line"));
+        final int column = intOf(xml.getAttributeValue(null, "column"));
+        final String source = xml.getAttributeValue(null, "source");
+        final int code = source != null && source.startsWith(SOURCE_PREFIX) ? intOf(source.substring(SOURCE_PREFIX.length())) : 0;
+        return new ShellcheckViolation(file, line, line, column, column, xml.getAttributeValue(null, "severity"), code,
+                xml.getAttributeValue(null, "message"));
+    }
+
+    private static int intOf(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeSummary(File json, int reports, int files, int violations, Map<String, Integer> severities,
+                                     Map<String, Integer> rules) throws IOException {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("reports", reports);
+        summary.put("filesWithViolations", files);
+        summary.put("violations", violations);
+        summary.put("severities", severities);
+        final Map<String, Integer> byCount = new LinkedHashMap<>();
+        rules.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .forEach(rule -> byCount.put(rule.getKey(), rule.getValue()));
+        summary.put("rules", byCount);
+        Files.write(json.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(summary)).getBytes(StandardCharsets.UTF_8));
+    }
+}
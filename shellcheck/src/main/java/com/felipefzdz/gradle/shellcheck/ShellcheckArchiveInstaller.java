@@ -0,0 +1,201 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Provisions shellcheck from a release archive into {@code <provisioningDir>/<version>/<sha256>}, so that it is
+ * downloaded and extracted only once per machine.
+ * <p>
+ * The archive is verified against its expected SHA-256 before being extracted. Provisioning happens while holding a
+ * file lock, so builds running concurrently on the same machine wait for each other, and is only considered done once
+ * a marker file has been written, so an interrupted provisioning is started over. Later executions only check the
+ * marker.
+ */
+class ShellcheckArchiveInstaller {
+
+    private static final String RELEASES_URL = "https://github.com/koalaman/shellcheck/releases/download/";
+    private static final String MARKER = ".provisioned";
+    private static final String BINARY = "shellcheck";
+
+    private ShellcheckArchiveInstaller() {
+    }
+
+    /**
+     * Where the binary of the given task is provisioned to, whether it has already been provisioned or not.
+     */
+    static File binaryOf(Shellcheck task) {
+        return new File(installDirOf(task), BINARY);
+    }
+
+    static synchronized File provision(Shellcheck task, Logger logger) throws IOException, InterruptedException {
+        final File installDir = installDirOf(task);
+        final File binary = new File(installDir, BINARY);
+        if (new File(installDir, MARKER).isFile()) {
+            logger.debug("Shellcheck is already provisioned in {}. Skipping installation.", installDir);
+            return binary;
+        }
+        final File versionDir = installDir.getParentFile();
+        Files.createDirectories(versionDir.toPath());
+        try (RandomAccessFile lockFile = new RandomAccessFile(new File(versionDir, installDir.getName() + ".lock"), "rw");
+             FileChannel channel = lockFile.getChannel();
+             FileLock ignored = channel.lock()) {
+            if (new File(installDir, MARKER).isFile()) {
+                logger.debug("Shellcheck was provisioned in {} by another build. Skipping installation.", installDir);
+                return binary;
+            }
+            final String source = archiveOf(task);
+            logger.lifecycle("Provisioning Shellcheck from {}", source);
+            final File staging = new File(versionDir, installDir.getName() + "-" + UUID.randomUUID());
+            try {
+                Files.createDirectories(staging.toPath());
+                final File archive = new File(staging, archiveName(source));
+                final String sha256 = download(source, archive);
+                if (!sha256.equalsIgnoreCase(task.getShellcheckArchiveSha256().get())) {
+                    throw new GradleException(String.format("Error while provisioning Shellcheck: the SHA-256 of %s is %s, but %s was expected",
+                            source, sha256, task.getShellcheckArchiveSha256().get()));
+                }
+                final File extracted = new File(staging, "extracted");
+                extract(archive, extracted, task.getWorkingDir().get().getAsFile(), logger);
+                final File found = findBinary(extracted).orElseThrow(() ->
+                        new GradleException(String.format("Error while provisioning Shellcheck: no %s binary found in %s", BINARY, source)));
+                final File staged = new File(staging, BINARY);
+                Files.move(found.toPath(), staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                if (!staged.setExecutable(true)) {
+                    throw new GradleException("Error while provisioning Shellcheck: unable to make " + staged + " executable");
+                }
+                FileUtils.deleteDirectory(extracted);
+                Files.delete(archive.toPath());
+                Files.write(new File(staging, MARKER).toPath(), (source + "\n" + sha256 + "\n").getBytes(StandardCharsets.UTF_8));
+                // Leftovers of an interrupted provisioning have no marker and are replaced
+                FileUtils.deleteDirectory(installDir);
+                Files.move(staging.toPath(), installDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                FileUtils.deleteDirectory(staging);
+            }
+            logger.info("Provisioned Shellcheck in {}", installDir);
+            return binary;
+        }
+    }
+
+    private static File installDirOf(Shellcheck task) {
+        final String sha256 = task.getShellcheckArchiveSha256().get();
+        if (!sha256.matches("[0-9a-fA-F]{64}")) {
+            throw new GradleException("shellcheckArchiveSha256 has to be set to the SHA-256 of the Shellcheck archive when using the archive installer");
+        }
+        return new File(new File(task.getProvisioningDir().get().getAsFile(), task.getShellcheckVersion().get()), sha256.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The configured archive or, if none, the release of {@code shellcheckVersion} for the current platform.
+     */
+    private static String archiveOf(Shellcheck task) {
+        if (!task.getShellcheckArchive().get().isEmpty()) {
+            return task.getShellcheckArchive().get();
+        }
+        final String os = System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("mac") ? "darwin" : "linux";
+        final String arch = asList("aarch64", "arm64").contains(System.getProperty("os.arch")) ? "aarch64" : "x86_64";
+        final String version = task.getShellcheckVersion().get();
+        return RELEASES_URL + version + "/shellcheck-" + version + "." + os + "." + arch + ".tar.xz";
+    }
+
+    private static String archiveName(String source) {
+        return source.substring(source.replace('\\', '/').lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Copies the archive, given as a URL or a local path, returning its SHA-256.
+     */
+    private static String download(String source, File destination) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(open(source), digest);
+             OutputStream out = Files.newOutputStream(destination.toPath())) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return ShellcheckResultStore.toHex(digest.digest());
+    }
+
+    private static InputStream open(String source) throws IOException {
+        return source.contains("://") ? new URL(source).openStream() : Files.newInputStream(new File(source).toPath());
+    }
+
+    /**
+     * Zip archives are extracted in Java, tarballs through {@code tar}, and anything else is taken as the binary itself.
+     */
+    private static void extract(File archive, File destination, File workingDir, Logger logger) throws IOException, InterruptedException {
+        Files.createDirectories(destination.toPath());
+        final String name = archive.getName();
+        if (name.endsWith(".zip")) {
+            unzip(archive, destination);
+        } else if (name.matches(".*\\.(tar|tar\\.xz|txz|tar\\.gz|tgz|tar\\.bz2|tbz2)$")) {
+            final Shell.Result result = Shell.stream(asList("tar", "-xf", archive.getAbsolutePath(), "-C", destination.getAbsolutePath()),
+                    workingDir, logger, in -> { });
+            if (result.getExitCode() != 0) {
+                throw new GradleException(String.format("Error while extracting Shellcheck archive %s: %s", archive, result.getStderr()));
+            }
+        } else {
+            Files.copy(archive.toPath(), new File(destination, BINARY).toPath());
+        }
+    }
+
+    private static void unzip(File archive, File destination) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive.toPath()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                final File target = new File(destination, entry.getName()).getCanonicalFile();
+                if (!target.toPath().startsWith(destination.getCanonicalFile().toPath())) {
+                    throw new GradleException("Error while extracting Shellcheck archive: " + entry.getName() + " is outside of the archive");
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target.toPath());
+                } else {
+                    Files.createDirectories(target.getParentFile().toPath());
+                    Files.copy(zip, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static Optional<File> findBinary(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> asList(BINARY, BINARY + ".exe").contains(path.getFileName().toString()))
+                    .map(Path::toFile)
+                    .findFirst();
+        }
+    }
+}
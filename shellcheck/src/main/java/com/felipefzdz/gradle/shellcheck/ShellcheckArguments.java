@@ -0,0 +1,65 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the additional arguments into the arguments handed over to shellcheck, the way a POSIX shell would split them
+ * without expanding anything: words are separated by whitespace, single quotes keep everything, double quotes keep
+ * everything but backslash escapes of {@code "}, {@code \}, {@code $} and {@code `}, and a backslash outside of
+ * quotes keeps the next character.
+ */
+class ShellcheckArguments {
+
+    private ShellcheckArguments() {
+    }
+
+    static List<String> tokenize(String arguments) {
+        final List<String> tokens = new ArrayList<>();
+        final StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < arguments.length(); i++) {
+            final char c = arguments.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    token.append(c);
+                }
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else if (c == '\\' && i + 1 < arguments.length() && "\"\\$`".indexOf(arguments.charAt(i + 1)) >= 0) {
+                    token.append(arguments.charAt(++i));
+                } else {
+                    token.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                inToken = true;
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '\\' && i + 1 < arguments.length()) {
+                    token.append(arguments.charAt(++i));
+                } else {
+                    token.append(c);
+                }
+            }
+        }
+        if (quote != 0) {
+            throw new GradleException(String.format("Unterminated %s quote in the Shellcheck additionalArguments: %s", quote, arguments));
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
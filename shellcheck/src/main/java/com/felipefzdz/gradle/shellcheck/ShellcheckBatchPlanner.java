@@ -0,0 +1,85 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.felipefzdz.gradle.shellcheck.Shell.run;
+import static java.util.Arrays.asList;
+
+/**
+ * Packs scripts into batches checked by a single shellcheck process each, keeping every command line within the
+ * argument length the operating system accepts.
+ */
+class ShellcheckBatchPlanner {
+
+    private static final Logger LOGGER = Logging.getLogger(ShellcheckBatchPlanner.class);
+    // The minimum ARG_MAX on Linux before the limit became relative to the stack size
+    private static final long DEFAULT_ARG_MAX = 131072;
+    private static final int POINTER_SIZE = 8;
+
+    private static volatile Long argumentBudget;
+
+    /**
+     * Splits the scripts in batches so that the command followed by the scripts of a batch never exceeds the
+     * argument budget and, when {@code maxFilesPerInvocation} is positive, never has more scripts than that.
+     * A script is always added to a batch, even if on its own it already goes over the budget.
+     */
+    static List<List<String>> plan(List<String> scripts, List<String> command, int maxFilesPerInvocation) {
+        return plan(scripts, command, maxFilesPerInvocation, argumentBudget());
+    }
+
+    static List<List<String>> plan(List<String> scripts, List<String> command, int maxFilesPerInvocation, long argumentBudget) {
+        final long available = argumentBudget - cost(command);
+        final List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        long batchCost = 0;
+        for (String script : scripts) {
+            final long scriptCost = cost(script);
+            final boolean full = maxFilesPerInvocation > 0 && batch.size() >= maxFilesPerInvocation;
+            if (!batch.isEmpty() && (full || batchCost + scriptCost > available)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchCost = 0;
+            }
+            batch.add(script);
+            batchCost += scriptCost;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static long cost(Collection<String> arguments) {
+        return arguments.stream().mapToLong(ShellcheckBatchPlanner::cost).sum();
+    }
+
+    /**
+     * Every argument takes its bytes, its NUL terminator and its pointer in argv.
+     */
+    private static long cost(String argument) {
+        return argument.getBytes(StandardCharsets.UTF_8).length + 1 + POINTER_SIZE;
+    }
+
+    /**
+     * Half of {@code ARG_MAX}, as the environment and the auxiliary vector share the same space as the arguments.
+     */
+    private static long argumentBudget() {
+        if (argumentBudget == null) {
+            long argMax = DEFAULT_ARG_MAX;
+            try {
+                argMax = Long.parseLong(run(asList("getconf", "ARG_MAX"), new File("."), LOGGER).trim());
+            } catch (Exception e) {
+                LOGGER.debug("Unable to determine ARG_MAX, using " + DEFAULT_ARG_MAX, e);
+            }
+            argumentBudget = argMax / 2;
+        }
+        return argumentBudget;
+    }
+}
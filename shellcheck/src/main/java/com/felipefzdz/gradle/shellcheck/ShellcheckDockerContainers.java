@@ -0,0 +1,88 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.felipefzdz.gradle.shellcheck.Shell.run;
+import static java.util.Arrays.asList;
+
+/**
+ * Keeps one long-lived shellcheck container per image and working directory for the whole build, so that shellcheck
+ * invocations go through {@code docker exec} instead of paying the startup of a new container every time.
+ * <p>
+ * Containers are started the first time they are needed and removed when the build finishes.
+ */
+public abstract class ShellcheckDockerContainers implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    private static final Logger LOGGER = Logging.getLogger(ShellcheckDockerContainers.class);
+    private static final Pattern CONTAINER_ID = Pattern.compile("[0-9a-f]{12,64}");
+
+    private final Map<String, Container> containers = new LinkedHashMap<>();
+
+    /**
+     * The command prefix to run a command inside the container for the given image and working directory, starting
+     * the container if it is not running yet.
+     */
+    public synchronized List<String> execCommand(String image, File workingDir) throws IOException, InterruptedException {
+        final String workingPath = workingDir.getAbsolutePath();
+        Container container = containers.get(image + ":" + workingPath);
+        if (container == null) {
+            container = start(image, workingDir);
+            containers.put(image + ":" + workingPath, container);
+        }
+        return new ArrayList<>(asList("docker", "exec", "-w", workingPath, container.id));
+    }
+
+    private static Container start(String image, File workingDir) throws IOException, InterruptedException {
+        final String workingPath = workingDir.getAbsolutePath();
+        final List<String> command = asList("docker", "run", "-d", "--rm",
+                "-v", workingPath + ":" + workingPath, "-w", workingPath,
+                image, "tail", "-f", "/dev/null");
+        LOGGER.debug("Command to start Shellcheck container: " + String.join(" ", command));
+        // Pulling the image logs progress to stderr, only the id of the container goes to stdout
+        final StringBuilder stdout = new StringBuilder();
+        final Shell.Result result = Shell.stream(command, workingDir, LOGGER, in -> stdout.append(IOUtils.toString(in, StandardCharsets.UTF_8)));
+        final String id = stdout.toString().trim();
+        if (!CONTAINER_ID.matcher(id).matches()) {
+            throw new GradleException(String.format("Error while starting Shellcheck container: %s", (id + "\n" + result.getStderr()).trim()));
+        }
+        LOGGER.info("Started Shellcheck container {} from {}", id, image);
+        return new Container(id, workingDir);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Container container : containers.values()) {
+            try {
+                run(asList("docker", "rm", "-f", container.id), container.workingDir, LOGGER);
+                LOGGER.info("Removed Shellcheck container {}", container.id);
+            } catch (IOException | InterruptedException e) {
+                LOGGER.warn("Unable to remove Shellcheck container " + container.id, e);
+            }
+        }
+        containers.clear();
+    }
+
+    private static class Container {
+        private final String id;
+        private final File workingDir;
+
+        private Container(String id, File workingDir) {
+            this.id = id;
+            this.workingDir = workingDir;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * How long shellcheck took to analyse every script in previous executions, so that shards are balanced by the time
+ * their scripts take rather than by their size alone.
+ * <p>
+ * Shellcheck checks many files per process, so the duration of a process is split among its scripts according to
+ * their estimated durations, and averaged with the previous duration of every script to smooth out noisy runs. A
+ * recorded duration is scaled by how much the script grew or shrank since, and scripts without one are estimated from
+ * their size, at the rate observed over the recorded scripts.
+ * <p>
+ * The history is kept next to the result store, for the current scripts only.
+ */
+class ShellcheckDurations {
+
+    private static final String DURATIONS_FILE = "durations.properties";
+
+    private final Map<String, Entry> recorded;
+    private final Map<String, Entry> measured = new HashMap<>();
+    private final double nanosPerByte;
+
+    private ShellcheckDurations(Map<String, Entry> recorded) {
+        this.recorded = recorded;
+        long bytes = 0;
+        long nanos = 0;
+        for (Entry entry : recorded.values()) {
+            bytes += Math.max(1, entry.length);
+            nanos += entry.nanos;
+        }
+        // Without any history every estimate is a size, which is enough to compare scripts between them
+        this.nanosPerByte = nanos > 0 ? (double) nanos / bytes : 1;
+    }
+
+    static ShellcheckDurations load(File storeDir) throws IOException {
+        final Map<String, Entry> recorded = new HashMap<>();
+        final File durationsFile = new File(storeDir, DURATIONS_FILE);
+        if (durationsFile.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(durationsFile.toPath())) {
+                properties.load(in);
+            }
+            for (String path : properties.stringPropertyNames()) {
+                final String[] fields = properties.getProperty(path).split(",");
+                try {
+                    if (fields.length == 2) {
+                        recorded.put(path, new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+                    }
+                } catch (NumberFormatException e) {
+                    // A corrupted entry only loses the history of its script
+                }
+            }
+        }
+        return new ShellcheckDurations(recorded);
+    }
+
+    /**
+     * The estimated number of nanoseconds shellcheck takes to analyse the given script, at least one.
+     */
+    long estimate(File script) {
+        final long length = Math.max(1, script.length());
+        final Entry entry = recorded.get(script.getPath());
+        final double nanos = entry != null ? (double) entry.nanos * length / Math.max(1, entry.length) : nanosPerByte * length;
+        return Math.max(1, Math.round(nanos));
+    }
+
+    /**
+     * Records the duration of a shellcheck process which analysed the given scripts.
+     */
+    void record(List<String> scripts, long nanos) {
+        final long[] estimates = new long[scripts.size()];
+        long total = 0;
+        for (int i = 0; i < scripts.size(); i++) {
+            estimates[i] = estimate(new File(scripts.get(i)));
+            total += estimates[i];
+        }
+        for (int i = 0; i < scripts.size(); i++) {
+            final String script = scripts.get(i);
+            final long share = Math.round((double) nanos * estimates[i] / total);
+            final Entry previous = recorded.get(script);
+            final long length = new File(script).length();
+            final long smoothed = previous == null ? share : (previous.nanos * Math.max(1, length) / Math.max(1, previous.length) + share) / 2;
+            measured.put(script, new Entry(length, smoothed));
+        }
+    }
+
+    void save(File storeDir, Collection<File> scripts) throws IOException {
+        final Properties properties = new Properties();
+        for (File script : scripts) {
+            final Entry entry = measured.containsKey(script.getPath()) ? measured.get(script.getPath()) : recorded.get(script.getPath());
+            if (entry != null) {
+                properties.setProperty(script.getPath(), entry.length + "," + entry.nanos);
+            }
+        }
+        Files.createDirectories(storeDir.toPath());
+        final File durationsFile = new File(storeDir, DURATIONS_FILE);
+        final File tmp = new File(storeDir, DURATIONS_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            properties.store(out, "Length and shellcheck duration in nanoseconds of every script");
+        }
+        Files.move(tmp.toPath(), durationsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Entry {
+        private final long length;
+        private final long nanos;
+
+        private Entry(long length, long nanos) {
+            this.length = length;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -1,54 +1,145 @@
 package com.felipefzdz.gradle.shellcheck;
 
-import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.quality.CodeQualityExtension;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
 
+import javax.inject.Inject;
 import java.io.File;
+import java.time.Duration;
+import java.util.Collections;
 
+/**
+ * The defaults of every {@link Shellcheck} task of the project.
+ * <p>
+ * Every setting is a lazy property, so it can be set from a provider and is only read when the task runs. The boolean
+ * settings keep their {@code isX} accessors, e.g. {@code isUseDocker = true}.
+ */
 public class ShellcheckExtension extends CodeQualityExtension {
 
-    private final Project project;
+    private final ConfigurableFileCollection sources;
+    private final ConfigurableFileCollection sourceFiles;
+    private final ListProperty<String> scriptExtensions;
+    private final ListProperty<String> includes;
+    private final ListProperty<String> excludes;
+    private final Property<Boolean> shebangDetection;
+    private final Property<Boolean> showViolations;
+    private final Property<String> shellcheckVersion;
+    private final Property<String> severity;
+    private final Property<Boolean> useDocker;
+    private final Property<Boolean> reuseDockerContainer;
+    private final Property<String> shellcheckBinary;
+    private final Property<String> installer;
+    private final Property<String> shellcheckArchive;
+    private final Property<String> shellcheckArchiveSha256;
+    private final Property<String> additionalArguments;
+    private final DirectoryProperty workingDir;
+    private final Property<Integer> maxParallelShards;
+    private final Property<Integer> maxFilesPerInvocation;
+    private final Property<Duration> invocationTimeout;
+    private final Property<Duration> taskTimeout;
+    private final Property<Integer> maxErrors;
+    private final Property<Integer> maxWarnings;
+    private final Property<Boolean> failFast;
+    private final Property<String> changedSince;
+    private final Property<Boolean> changedLinesOnly;
+    private final Property<String> sharedStore;
+    private final Property<Boolean> sharedStorePush;
 
-    private FileCollection sources;
-    private FileCollection sourceFiles;
-    private boolean showViolations = true;
-    private String shellcheckVersion = "v0.7.1";
-    private String severity = "style";
-    private boolean useDocker = true;
-    private String shellcheckBinary = "/usr/local/bin/shellcheck";
-    private String installer = "";
-    private String additionalArguments = "";
-    private File workingDir;
-
-    public ShellcheckExtension(Project project) {
-        this.project = project;
-        this.workingDir = project.getProjectDir();
+    @Inject
+    public ShellcheckExtension(ObjectFactory objects, ProjectLayout layout) {
+        this.sources = objects.fileCollection();
+        this.sourceFiles = objects.fileCollection();
+        this.scriptExtensions = objects.listProperty(String.class).convention(ShellcheckSourceDiscovery.DEFAULT_EXTENSIONS);
+        this.includes = objects.listProperty(String.class).convention(Collections.emptyList());
+        this.excludes = objects.listProperty(String.class).convention(Collections.emptyList());
+        this.shebangDetection = objects.property(Boolean.class).convention(true);
+        this.showViolations = objects.property(Boolean.class).convention(true);
+        this.shellcheckVersion = objects.property(String.class).convention("v0.7.1");
+        this.severity = objects.property(String.class).convention("style");
+        this.useDocker = objects.property(Boolean.class).convention(true);
+        this.reuseDockerContainer = objects.property(Boolean.class).convention(false);
+        this.shellcheckBinary = objects.property(String.class).convention("/usr/local/bin/shellcheck");
+        this.installer = objects.property(String.class).convention("");
+        this.shellcheckArchive = objects.property(String.class).convention("");
+        this.shellcheckArchiveSha256 = objects.property(String.class).convention("");
+        this.additionalArguments = objects.property(String.class).convention("");
+        this.workingDir = objects.directoryProperty().convention(layout.getProjectDirectory());
+        this.maxParallelShards = objects.property(Integer.class);
+        this.maxFilesPerInvocation = objects.property(Integer.class).convention(0);
+        this.invocationTimeout = objects.property(Duration.class);
+        this.taskTimeout = objects.property(Duration.class);
+        this.maxErrors = objects.property(Integer.class).convention(0);
+        this.maxWarnings = objects.property(Integer.class).convention(0);
+        this.failFast = objects.property(Boolean.class).convention(false);
+        this.changedSince = objects.property(String.class);
+        this.changedLinesOnly = objects.property(Boolean.class).convention(false);
+        this.sharedStore = objects.property(String.class);
+        this.sharedStorePush = objects.property(Boolean.class);
     }
 
-    public FileCollection getSources() {
+    public ConfigurableFileCollection getSources() {
         return sources;
     }
 
     public void setSources(FileCollection sources) {
-        this.sources = sources;
+        getSources().setFrom(sources);
     }
 
-    public FileCollection getSourceFiles() {
+    public ConfigurableFileCollection getSourceFiles() {
         return sourceFiles;
     }
 
     public void setSourceFiles(FileCollection sourceFiles) {
-        this.sourceFiles = sourceFiles;
+        getSourceFiles().setFrom(sourceFiles);
     }
 
     /**
-     * Whether rule violations are to be displayed on the console. Defaults to true.
+     * The extensions of the files in {@code sources} to be considered shell scripts. Defaults to sh, bash, ksh, bashrc,
+     * bash_profile, bash_login and bash_logout.
+     */
+    public ListProperty<String> getScriptExtensions() {
+        return scriptExtensions;
+    }
+
+    /**
+     * Ant style patterns, relative to every folder in {@code sources}, the scripts have to match. Defaults to none,
+     * meaning every script is included.
      * <p>
-     * Example: showViolations = false
+     * Example: includes = listOf("bin/**", "scripts/**")
      */
-    public boolean isShowViolations() {
-        return showViolations;
+    public ListProperty<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * Ant style patterns, relative to every folder in {@code sources}, of the scripts to leave out. Defaults to none.
+     * <p>
+     * Example: excludes = listOf("node_modules/**")
+     */
+    public ListProperty<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Whether files without extension in {@code sources} are considered shell scripts when their shebang points to
+     * sh, bash, dash or ksh. Defaults to true.
+     */
+    public Property<Boolean> getShebangDetection() {
+        return shebangDetection;
+    }
+
+    public boolean isShebangDetection() {
+        return getShebangDetection().get();
+    }
+
+    public void setShebangDetection(boolean shebangDetection) {
+        getShebangDetection().set(shebangDetection);
     }
 
     /**
@@ -56,68 +147,241 @@ public class ShellcheckExtension extends CodeQualityExtension {
      * <p>
      * Example: showViolations = false
      */
+    public Property<Boolean> getShowViolations() {
+        return showViolations;
+    }
+
+    public boolean isShowViolations() {
+        return getShowViolations().get();
+    }
+
     public void setShowViolations(boolean showViolations) {
-        this.showViolations = showViolations;
+        getShowViolations().set(showViolations);
     }
 
-    public String getShellcheckVersion() {
+    public Property<String> getShellcheckVersion() {
         return shellcheckVersion;
     }
 
     public void setShellcheckVersion(String shellcheckVersion) {
-        this.shellcheckVersion = shellcheckVersion;
+        getShellcheckVersion().set(shellcheckVersion);
     }
 
-    public String getSeverity() {
+    public Property<String> getSeverity() {
         return severity;
     }
 
     public void setSeverity(String severity) {
-        this.severity = severity;
+        getSeverity().set(severity);
     }
 
-    public boolean getUseDocker() {
+    public Property<Boolean> getUseDocker() {
         return useDocker;
     }
 
+    public boolean isUseDocker() {
+        return getUseDocker().get();
+    }
+
     public void setUseDocker(boolean useDocker) {
-        this.useDocker = useDocker;
+        getUseDocker().set(useDocker);
     }
 
-    public boolean isUseDocker() {
-        return useDocker;
+    /**
+     * Whether to run shellcheck inside a single container started once per build, instead of starting a new container
+     * for every shellcheck invocation. Defaults to false.
+     * <p>
+     * Example: reuseDockerContainer = true
+     */
+    public Property<Boolean> getReuseDockerContainer() {
+        return reuseDockerContainer;
     }
 
-    public String getShellcheckBinary() {
+    public boolean isReuseDockerContainer() {
+        return getReuseDockerContainer().get();
+    }
+
+    public void setReuseDockerContainer(boolean reuseDockerContainer) {
+        getReuseDockerContainer().set(reuseDockerContainer);
+    }
+
+    public Property<String> getShellcheckBinary() {
         return shellcheckBinary;
     }
 
     public void setShellcheckBinary(String shellcheckBinary) {
-        this.shellcheckBinary = shellcheckBinary;
+        getShellcheckBinary().set(shellcheckBinary);
     }
 
-    public String getInstaller() {
+    public Property<String> getInstaller() {
         return installer;
     }
 
     public void setInstaller(String installer) {
-        this.installer = installer;
+        getInstaller().set(installer);
+    }
+
+    /**
+     * The shellcheck release archive, as a URL or a local path, provisioned when {@code installer} is {@code archive}.
+     * Tarballs, zip files and bare binaries are supported. Defaults to the release of {@code shellcheckVersion} for the
+     * current platform.
+     * <p>
+     * Example: shellcheckArchive = "https://mirror.example.com/shellcheck-v0.7.1.linux.x86_64.tar.xz"
+     */
+    public Property<String> getShellcheckArchive() {
+        return shellcheckArchive;
+    }
+
+    /**
+     * The expected SHA-256 of {@code shellcheckArchive}, required when {@code installer} is {@code archive}.
+     * <p>
+     * Example: shellcheckArchiveSha256 = providers.fileContents(layout.projectDirectory.file("shellcheck.sha256")).asText.map { it.trim() }
+     */
+    public Property<String> getShellcheckArchiveSha256() {
+        return shellcheckArchiveSha256;
     }
 
-    public String getAdditionalArguments() {
+    public Property<String> getAdditionalArguments() {
         return additionalArguments;
     }
 
     public void setAdditionalArguments(String additionalArguments) {
-        this.additionalArguments = additionalArguments;
+        getAdditionalArguments().set(additionalArguments);
     }
 
-    public File getWorkingDir() {
+    /**
+     * The folder shellcheck runs from. Defaults to the project directory.
+     */
+    public DirectoryProperty getWorkingDir() {
         return workingDir;
     }
 
     public void setWorkingDir(File workingDir) {
-        this.workingDir = workingDir;
+        getWorkingDir().set(workingDir);
     }
 
+    /**
+     * The maximum amount of shellcheck processes to run in parallel. Defaults to the maximum number of Gradle workers.
+     */
+    public Property<Integer> getMaxParallelShards() {
+        return maxParallelShards;
+    }
+
+    /**
+     * The maximum amount of scripts checked by a single shellcheck process. Defaults to 0, meaning that scripts are
+     * only bounded by the maximum command line length of the operating system.
+     */
+    public Property<Integer> getMaxFilesPerInvocation() {
+        return maxFilesPerInvocation;
+    }
+
+    /**
+     * How long a single shellcheck process may run before it is destroyed. A timed out process is run again over each
+     * half of its scripts, until the scripts shellcheck gets stuck on are found, and the build fails naming them.
+     * Defaults to none.
+     * <p>
+     * Example: invocationTimeout = Duration.ofMinutes(2)
+     */
+    public Property<Duration> getInvocationTimeout() {
+        return invocationTimeout;
+    }
+
+    /**
+     * How long all the shellcheck processes of a task may run, after which the ones still running are destroyed and the
+     * build fails naming the scripts they were checking. Defaults to none.
+     * <p>
+     * Example: taskTimeout = Duration.ofMinutes(10)
+     */
+    public Property<Duration> getTaskTimeout() {
+        return taskTimeout;
+    }
+
+    /**
+     * The maximum number of violations with error severity that are tolerated before the build fails. Defaults to 0.
+     * <p>
+     * Example: maxErrors = 10
+     */
+    public Property<Integer> getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * The maximum number of violations with warning, info or style severity that are tolerated before the build fails.
+     * Defaults to 0.
+     * <p>
+     * Example: maxWarnings = 100
+     */
+    public Property<Integer> getMaxWarnings() {
+        return maxWarnings;
+    }
+
+    /**
+     * Whether to stop checking scripts as soon as {@code maxErrors} or {@code maxWarnings} is exceeded, failing the
+     * build with the reports written so far. Defaults to false.
+     */
+    public Property<Boolean> getFailFast() {
+        return failFast;
+    }
+
+    public boolean isFailFast() {
+        return getFailFast().get();
+    }
+
+    public void setFailFast(boolean failFast) {
+        getFailFast().set(failFast);
+    }
+
+    /**
+     * A git revision, e.g. {@code origin/main}, to only check the scripts added or modified since then, including
+     * uncommitted and untracked ones. Defaults to the {@code shellcheck.changedSince} gradle property, or none to check
+     * every script. Every script is also checked when git or the revision are not available.
+     * <p>
+     * Example: changedSince = "origin/main"
+     */
+    public Property<String> getChangedSince() {
+        return changedSince;
+    }
+
+    /**
+     * Whether to only report the violations on the lines changed since {@code changedSince}. Defaults to false.
+     */
+    public Property<Boolean> getChangedLinesOnly() {
+        return changedLinesOnly;
+    }
+
+    public boolean isChangedLinesOnly() {
+        return getChangedLinesOnly().get();
+    }
+
+    public void setChangedLinesOnly(boolean changedLinesOnly) {
+        getChangedLinesOnly().set(changedLinesOnly);
+    }
+
+    /**
+     * A folder, e.g. a shared mount, or an HTTP URL where the results of every checked script are shared with other
+     * machines, so that any of them reuses the results of the scripts already checked by another one. Defaults to the
+     * {@code shellcheck.sharedStore} gradle property, or none.
+     * <p>
+     * Example: sharedStore = "https://cache.example.com/shellcheck"
+     */
+    public Property<String> getSharedStore() {
+        return sharedStore;
+    }
+
+    /**
+     * Whether the results of the scripts checked by this machine are added to {@code sharedStore}, usually only set on
+     * CI, like pushing to a remote build cache. Defaults to the {@code shellcheck.sharedStorePush} gradle property, or
+     * false.
+     */
+    public Property<Boolean> getSharedStorePush() {
+        return sharedStorePush;
+    }
+
+    public boolean isSharedStorePush() {
+        return getSharedStorePush().get();
+    }
+
+    public void setSharedStorePush(boolean sharedStorePush) {
+        getSharedStorePush().set(sharedStorePush);
+    }
 }
@@ -0,0 +1,327 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The files changed in the local git repository since a base revision, used to only check the scripts touched by a
+ * branch, and optionally to only report the violations on the lines it touched.
+ * <p>
+ * Files are compared against the merge base of the revision and {@code HEAD}, so that changes made to the base branch
+ * since the branch was created are left out. Added, modified, renamed and copied files count as changed, including
+ * uncommitted and untracked ones, while deleted files are ignored.
+ * <p>
+ * Files are kept relative to the root of the repository, which is left out of the serialized form, so that the changes
+ * are the same task input wherever the repository is checked out.
+ */
+public class ShellcheckGitChanges implements Serializable {
+
+    /**
+     * The gradle property setting {@code changedSince}, e.g. {@code -Pshellcheck.changedSince=origin/main}.
+     */
+    public static final String CHANGED_SINCE_PROPERTY = "shellcheck.changedSince";
+
+    private static final long serialVersionUID = 2L;
+    private static final Logger LOGGER = Logging.getLogger(ShellcheckGitChanges.class);
+    private static final List<Integer> WHOLE_FILE = Collections.unmodifiableList(Arrays.asList(1, Integer.MAX_VALUE));
+    private static final Pattern HUNK = Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@");
+
+    private final String base;
+    private transient File root;
+    private final Map<String, List<Integer>> lines;
+    private final boolean changedLinesOnly;
+
+    /**
+     * @param lines the changed files, relative to {@code root}, mapped to the first and last line of every range of
+     *              changed lines
+     */
+    ShellcheckGitChanges(String base, File root, Map<String, List<Integer>> lines, boolean changedLinesOnly) {
+        this.base = base;
+        this.root = root;
+        this.lines = Collections.unmodifiableMap(new TreeMap<>(lines));
+        this.changedLinesOnly = changedLinesOnly;
+    }
+
+    /**
+     * The commit files are compared against.
+     */
+    public String getBase() {
+        return base;
+    }
+
+    /**
+     * These changes, resolving the root of the repository from the given folder when they were deserialized without it.
+     */
+    ShellcheckGitChanges at(File workingDir) {
+        if (root == null) {
+            try {
+                root = Source.rootOf(workingDir);
+            } catch (IOException e) {
+                throw new GradleException("Unable to find the root of the git repository of " + workingDir, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GradleException("Interrupted while finding the root of the git repository of " + workingDir, e);
+            }
+        }
+        return this;
+    }
+
+    boolean contains(File script) {
+        return lines.containsKey(relativePath(script));
+    }
+
+    /**
+     * The violations of the given script to report: all of them, or only those overlapping the lines changed in it
+     * when {@code changedLinesOnly} is set.
+     */
+    List<ShellcheckViolation> filter(String script, List<ShellcheckViolation> violations) {
+        if (!changedLinesOnly) {
+            return violations;
+        }
+        final List<Integer> ranges = lines.get(relativePath(new File(script)));
+        if (ranges == null) {
+            return Collections.emptyList();
+        }
+        if (ranges.equals(WHOLE_FILE)) {
+            return violations;
+        }
+        return violations.stream().filter(violation -> {
+            final int endLine = Math.max(violation.getLine(), violation.getEndLine());
+            for (int i = 0; i < ranges.size(); i += 2) {
+                if (violation.getLine() <= ranges.get(i + 1) && endLine >= ranges.get(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }).collect(Collectors.toList());
+    }
+
+    private String relativePath(File script) {
+        return root.toPath().relativize(script.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final ShellcheckGitChanges that = (ShellcheckGitChanges) o;
+        return changedLinesOnly == that.changedLinesOnly && base.equals(that.base) && lines.equals(that.lines);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(base, lines, changedLinesOnly);
+    }
+
+    /**
+     * Finds the changes through the {@code git} command. Yields nothing when {@code changedSince} is not set, or when
+     * git, the repository or the revision are not available, so that every script is checked instead.
+     */
+    public abstract static class Source implements ValueSource<ShellcheckGitChanges, Source.Parameters> {
+
+        public interface Parameters extends ValueSourceParameters {
+            Property<String> getChangedSince();
+
+            Property<Boolean> getChangedLinesOnly();
+
+            DirectoryProperty getWorkingDir();
+        }
+
+        @Override
+        public ShellcheckGitChanges obtain() {
+            final String changedSince = getParameters().getChangedSince().getOrNull();
+            if (changedSince == null || changedSince.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                return find(changedSince.trim(), getParameters().getChangedLinesOnly().get(), getParameters().getWorkingDir().get().getAsFile());
+            } catch (GitException e) {
+                LOGGER.warn("Shellcheck will check every script, as the files changed since {} could not be found: {}", changedSince, e.getMessage());
+                return null;
+            } catch (IOException e) {
+                LOGGER.warn("Shellcheck will check every script, as git is not available: {}", e.getMessage());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        private static ShellcheckGitChanges find(String changedSince, boolean changedLinesOnly, File workingDir) throws IOException, InterruptedException {
+            final File root = rootOf(workingDir);
+            final String base = mergeBase(root, changedSince);
+            final Map<String, List<Integer>> lines = new TreeMap<>();
+            final List<String> status = split(git(root, "diff", "--name-status", "-z", "-M", "--no-ext-diff", base));
+            for (int i = 0; i < status.size(); i++) {
+                final char change = status.get(i).charAt(0);
+                if (change == 'R' || change == 'C') {
+                    // Followed by the old and the new path
+                    i += 2;
+                    lines.put(status.get(i), WHOLE_FILE);
+                } else {
+                    i++;
+                    if (change != 'D') {
+                        lines.put(status.get(i), WHOLE_FILE);
+                    }
+                }
+            }
+            if (changedLinesOnly) {
+                changedLines(root, base, lines);
+            }
+            for (String untracked : split(git(root, "ls-files", "--others", "--exclude-standard", "-z"))) {
+                lines.put(untracked, WHOLE_FILE);
+            }
+            LOGGER.info("Found {} files changed since {} ({})", lines.size(), changedSince, base);
+            return new ShellcheckGitChanges(base, root, lines, changedLinesOnly);
+        }
+
+        private static File rootOf(File workingDir) throws IOException, InterruptedException {
+            return new File(git(workingDir, "rev-parse", "--show-toplevel").trim()).getCanonicalFile();
+        }
+
+        /**
+         * The merge base of the revision and {@code HEAD}, or the revision itself when there is none, e.g. in a shallow
+         * clone lacking the history of the base branch.
+         */
+        private static String mergeBase(File root, String changedSince) throws IOException, InterruptedException {
+            try {
+                return git(root, "merge-base", changedSince, "HEAD").trim();
+            } catch (GitException e) {
+                LOGGER.info("No merge base found for {} and HEAD, comparing against {} itself", changedSince, changedSince);
+                return git(root, "rev-parse", "--verify", changedSince + "^{commit}").trim();
+            }
+        }
+
+        /**
+         * Narrows the modified files to the lines added or changed in them, according to a diff without context.
+         * Files whose lines were only removed or that were renamed as they were are left without changed lines.
+         */
+        private static void changedLines(File root, String base, Map<String, List<Integer>> lines) throws IOException, InterruptedException {
+            final Map<String, List<Integer>> ranges = new TreeMap<>();
+            List<Integer> current = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(
+                    gitBytes(root, "-c", "core.quotePath=false", "diff", "-U0", "-M", "--no-color", "--no-ext-diff", "--no-prefix", base)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("+++ ")) {
+                        final String path = pathOf(line.substring(4));
+                        current = lines.containsKey(path) ? ranges.computeIfAbsent(path, p -> new ArrayList<>()) : null;
+                    } else if (current != null && line.startsWith("@@")) {
+                        final Matcher hunk = HUNK.matcher(line);
+                        if (hunk.find()) {
+                            final int start = Integer.parseInt(hunk.group(1));
+                            final int count = hunk.group(2) == null ? 1 : Integer.parseInt(hunk.group(2));
+                            if (count > 0) {
+                                current.add(start);
+                                current.add(start + count - 1);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, List<Integer>> entry : lines.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(ranges.getOrDefault(entry.getKey(), Collections.emptyList())));
+            }
+        }
+
+        /**
+         * The path of a file header of the diff, which git ends with a tab when the path contains a space, and C-quotes
+         * when it contains a double quote, a backslash or a control character.
+         */
+        private static String pathOf(String header) {
+            if (header.length() < 2 || !header.startsWith("\"") || !header.endsWith("\"")) {
+                return header.endsWith("\t") ? header.substring(0, header.length() - 1) : header;
+            }
+            final ByteArrayOutputStream path = new ByteArrayOutputStream();
+            final StringBuilder literal = new StringBuilder();
+            for (int i = 1; i < header.length() - 1; i++) {
+                final char c = header.charAt(i);
+                if (c != '\\' || i + 1 == header.length() - 1) {
+                    literal.append(c);
+                    continue;
+                }
+                final char escaped = header.charAt(++i);
+                if (escaped >= '0' && escaped <= '7') {
+                    // Bytes of a non-ASCII name, when core.quotePath does not leave it alone
+                    int value = escaped - '0';
+                    for (int digits = 1; digits < 3 && header.charAt(i + 1) >= '0' && header.charAt(i + 1) <= '7'; digits++) {
+                        value = value * 8 + header.charAt(++i) - '0';
+                    }
+                    flush(literal, path);
+                    path.write(value);
+                } else {
+                    final int index = "abtnvfr".indexOf(escaped);
+                    literal.append(index >= 0 ? (char) (7 + index) : escaped);
+                }
+            }
+            flush(literal, path);
+            return new String(path.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        private static void flush(StringBuilder literal, ByteArrayOutputStream path) {
+            final byte[] bytes = literal.toString().getBytes(StandardCharsets.UTF_8);
+            path.write(bytes, 0, bytes.length);
+            literal.setLength(0);
+        }
+
+        private static List<String> split(String nulSeparated) {
+            return Arrays.stream(nulSeparated.split("\0")).filter(token -> !token.isEmpty()).collect(Collectors.toList());
+        }
+
+        private static String git(File workingDir, String... arguments) throws IOException, InterruptedException {
+            return new String(gitBytes(workingDir, arguments), StandardCharsets.UTF_8);
+        }
+
+        private static byte[] gitBytes(File workingDir, String... arguments) throws IOException, InterruptedException {
+            final List<String> command = new ArrayList<>();
+            command.add("git");
+            command.addAll(Arrays.asList(arguments));
+            final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            final Shell.Result result = Shell.stream(command, workingDir, LOGGER, in -> {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    stdout.write(buffer, 0, read);
+                }
+            });
+            if (result.getExitCode() != 0) {
+                throw new GitException(String.join(" ", command) + " failed: " + result.getStderr());
+            }
+            return stdout.toByteArray();
+        }
+    }
+
+    private static class GitException extends IOException {
+        GitException(String message) {
+            super(message);
+        }
+    }
+}
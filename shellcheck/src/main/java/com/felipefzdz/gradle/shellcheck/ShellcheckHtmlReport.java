@@ -1,8 +1,10 @@
 package com.felipefzdz.gradle.shellcheck;
 
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.resources.TextResource;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
 
 import javax.annotation.Nullable;
 
@@ -24,4 +26,11 @@ public interface ShellcheckHtmlReport extends ShellcheckReport {
      * @param stylesheet the stylesheet to use to generate the HTML report
      */
     void setStylesheet(@Nullable TextResource stylesheet);
+
+    /**
+     * The location on the filesystem to generate the page of every file with violations to, linked from the report.
+     * Left empty when a custom stylesheet is used.
+     */
+    @OutputDirectory
+    DirectoryProperty getPagesLocation();
 }
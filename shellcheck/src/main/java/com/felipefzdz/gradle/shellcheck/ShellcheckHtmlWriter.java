@@ -0,0 +1,206 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes the HTML report as an index page, listing every file with violations, plus one page per file.
+ * <p>
+ * Pages are rendered in parallel as files are handed over, with a bounded amount of them in flight, so neither the
+ * memory used nor the size of any page grows with the amount of files checked.
+ */
+class ShellcheckHtmlWriter implements Closeable {
+
+    private static final String WIKI_URL = "https://www.shellcheck.net/wiki/";
+    private static final String STYLE = "body { margin-left: 10px; margin-right: 10px; font: normal 80% arial, helvetica, sans-serif; background-color: #FFFFFF; color: #000000; }\n"
+            + ".a td { background: #efefef; }\n"
+            + ".b td { background: #fff; }\n"
+            + "th, td { text-align: left; vertical-align: top; }\n"
+            + "th { font-weight: bold; background: #ccc; color: black; }\n"
+            + "table, th, td { font-size: 100%; border: none; }\n"
+            + "h2 { font-weight: bold; font-size: 140%; margin-bottom: 5px; }\n"
+            + "h3 { font-size: 100%; font-weight: bold; background: #525D76; color: white; text-decoration: none; padding: 5px; margin: 0 2px; }\n";
+
+    private final File index;
+    private final File pagesDir;
+    private final String pagesPath;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final List<Future<?>> pages = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+
+    ShellcheckHtmlWriter(File index, File pagesDir) throws IOException {
+        this.index = index;
+        this.pagesDir = pagesDir;
+        this.pagesPath = index.getAbsoluteFile().getParentFile().toPath().relativize(pagesDir.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+        final int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "shellcheck-html");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.inFlight = new Semaphore(threads * 4);
+        FileUtils.deleteDirectory(pagesDir);
+        Files.createDirectories(pagesDir.toPath());
+        Files.createDirectories(index.getAbsoluteFile().getParentFile().toPath());
+    }
+
+    void write(String file, List<ShellcheckViolation> violations) throws IOException {
+        final Entry entry = new Entry(file, violations.size(), pageName(entries.size(), file));
+        entries.add(entry);
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the Shellcheck HTML report");
+        }
+        pages.add(executor.submit(() -> {
+            try {
+                writePage(entry, violations);
+                return null;
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Future<?> page : pages) {
+                page.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the Shellcheck HTML report");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to write the Shellcheck HTML report", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        writeIndex();
+    }
+
+    private void writeIndex() throws IOException {
+        entries.sort(Comparator.comparingInt((Entry entry) -> entry.violations).reversed().thenComparing(entry -> entry.file));
+        final int violations = entries.stream().mapToInt(entry -> entry.violations).sum();
+        try (Writer out = Files.newBufferedWriter(index.toPath(), StandardCharsets.UTF_8)) {
+            header(out, "Shellcheck Audit");
+            out.write("<h3>Summary</h3>\n<table class=\"log\" border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\">\n");
+            out.write("<tr><th>Files</th><th>Errors</th></tr>\n");
+            out.write("<tr class=\"a\"><td>" + entries.size() + "</td><td>" + violations + "</td></tr>\n</table>\n<hr size=\"1\" width=\"100%\" align=\"left\"/>\n");
+            out.write("<h3>Files</h3>\n<table class=\"log\" border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\">\n");
+            out.write("<tr><th>Name</th><th>Errors</th></tr>\n");
+            for (int i = 0; i < entries.size(); i++) {
+                final Entry entry = entries.get(i);
+                out.write("<tr class=\"" + rowClass(i) + "\"><td><a href=\"" + escape(pagesPath + "/" + entry.page) + "\">" + escape(entry.file) + "</a></td>"
+                        + "<td>" + entry.violations + "</td></tr>\n");
+            }
+            out.write("</table>\n");
+            footer(out);
+        }
+    }
+
+    private void writePage(Entry entry, List<ShellcheckViolation> violations) throws IOException {
+        final List<ShellcheckViolation> sorted = new ArrayList<>(violations);
+        sorted.sort(Comparator.comparingInt(ShellcheckViolation::getLine).thenComparingInt(ShellcheckViolation::getColumn));
+        try (Writer out = Files.newBufferedWriter(new File(pagesDir, entry.page).toPath(), StandardCharsets.UTF_8)) {
+            header(out, "Shellcheck Audit");
+            out.write("<h3>File " + escape(entry.file) + "</h3>\n");
+            out.write("<table class=\"log\" border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\">\n");
+            out.write("<tr><th>Error Description</th><th>Line</th><th>Column</th><th>Severity</th><th>Rule</th></tr>\n");
+            for (int i = 0; i < sorted.size(); i++) {
+                final ShellcheckViolation violation = sorted.get(i);
+                out.write("<tr class=\"" + rowClass(i) + "\"><td>" + escape(violation.getMessage()) + "</td>"
+                        + "<td>" + violation.getLine() + "</td><td>" + violation.getColumn() + "</td>"
+                        + "<td>" + escape(violation.getLevel()) + "</td>"
+                        + "<td><a href=\"" + WIKI_URL + violation.getRule() + "\">" + violation.getRule() + "</a></td></tr>\n");
+            }
+            out.write("</table>\n<a href=\"" + escape(backToIndex()) + "\">Back to the index</a>\n");
+            footer(out);
+        }
+    }
+
+    private String backToIndex() {
+        return pagesDir.getAbsoluteFile().toPath().relativize(index.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private static void header(Writer out, String title) throws IOException {
+        out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>" + title + "</title>\n");
+        out.write("<style type=\"text/css\">\n" + STYLE + "</style>\n</head>\n<body>\n");
+        out.write("<h2>" + title + "</h2>\n<hr size=\"1\"/>\n");
+    }
+
+    private static void footer(Writer out) throws IOException {
+        out.write("<hr size=\"1\" width=\"100%\" align=\"left\"/>\n</body>\n</html>\n");
+    }
+
+    private static String rowClass(int row) {
+        return row % 2 == 0 ? "a" : "b";
+    }
+
+    /**
+     * A readable and unique file name for the page of a file.
+     */
+    private static String pageName(int position, String file) {
+        final String name = file.substring(file.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        return position + "-" + name + ".html";
+    }
+
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        final StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\'':
+                    escaped.append("&#39;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static class Entry {
+        private final String file;
+        private final int violations;
+        private final String page;
+
+        private Entry(String file, int violations, String page) {
+            this.file = file;
+            this.violations = violations;
+            this.page = page;
+        }
+    }
+}
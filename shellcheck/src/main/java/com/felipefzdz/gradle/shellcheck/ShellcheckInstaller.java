@@ -15,6 +15,11 @@ import static java.util.Collections.singletonList;
 
 public class ShellcheckInstaller {
 
+    /**
+     * The installer provisioning shellcheck from a release archive, see {@link ShellcheckArchiveInstaller}.
+     */
+    static final String ARCHIVE = "archive";
+
     private static final Map<String, List<String>> INSTALLER_COMMANDS = new HashMap<String, List<String>>() {{
         put("cabal", asList("cabal update", "cabal install ShellCheck"));
         put("stack", asList("stack update", "stack install ShellCheck"));
@@ -34,6 +39,21 @@ public class ShellcheckInstaller {
         put("nix-env", singletonList("nix-env -iA nixpkgs.shellcheck"));
     }};
 
+    /**
+     * The shellcheck binary to run when not using Docker, which is the provisioned one when using the archive installer.
+     */
+    static String binaryOf(Shellcheck task) {
+        return ARCHIVE.equals(task.getInstaller().get()) ? ShellcheckArchiveInstaller.binaryOf(task).getAbsolutePath() : task.getShellcheckBinary().get();
+    }
+
+    static void maybeInstallShellcheck(Shellcheck task) throws IOException, InterruptedException {
+        if (ARCHIVE.equals(task.getInstaller().get())) {
+            ShellcheckArchiveInstaller.provision(task, task.getLogger());
+        } else {
+            maybeInstallShellcheck(task.getInstaller().get(), task.getWorkingDir().get().getAsFile(), task.getLogger());
+        }
+    }
+
     public static void maybeInstallShellcheck(String installer, File projectDir, Logger logger) throws IOException, InterruptedException {
         if (installer.isEmpty()) {
             return;
@@ -3,281 +3,558 @@ package com.felipefzdz.gradle.shellcheck;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.GradleException;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.logging.Logger;
 import org.gradle.internal.logging.ConsoleRenderer;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
+import org.gradle.work.FileChange;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
-import static com.felipefzdz.gradle.shellcheck.Shell.run;
-
 public class ShellcheckInvoker {
 
-    private static final String SHELLCHECK_NOFRAMES_SORTED_XSL = "shellcheck-noframes-sorted.xsl";
+    private static final List<String> SEVERITIES = Arrays.asList("error", "warning", "info", "style");
 
-    public static void invoke(Shellcheck task) {
-        maybeInstallShellcheck(task);
+    public static void invoke(Shellcheck task, InputChanges inputChanges) {
+        try {
+            invoke(task, ShellcheckSources.resolve(task), changedFiles(task, inputChanges));
+        } catch (IOException e) {
+            throw new GradleException("Error while running Shellcheck", e);
+        }
+    }
+
+    /**
+     * Checks the given scripts and writes the reports, reusing the results of the previous executions for the scripts
+     * not sourcing any of the changed files.
+     *
+     * @param changed the files changed since the last execution, or null when every script has to be considered as
+     *                changed
+     */
+    static void invoke(Shellcheck task, List<File> sources, Set<File> changed) {
+        if (!SEVERITIES.contains(task.getSeverity().get())) {
+            throw new GradleException(String.format("Invalid severity %s, expected one of error, warning, info or style", task.getSeverity().get()));
+        }
         final ShellcheckReports reports = task.getReports();
-        final File xmlDestination = calculateReportDestination(task, reports.getXml());
-
-        handleCheckstyleReport(task, xmlDestination).ifPresent(parsedReport -> {
-            handleTtyReport(task, reports, calculateReportDestination(task, reports.getTxt()));
-            handleHtmlReport(reports, xmlDestination);
-            calculateReportSummary(parsedReport).ifPresent(reportSummary -> {
-                final String message = getMessage(reports, reportSummary);
-                if (task.getIgnoreFailures()) {
+        final ShellcheckMetrics metrics = new ShellcheckMetrics(reports.getMetrics().getRequired().get());
+        long start = System.nanoTime();
+        maybeInstallShellcheck(task);
+        metrics.phase("installation", start);
+        start = System.nanoTime();
+        final ShellcheckProbes.Capabilities capabilities = probe(task);
+        metrics.phase("probe", start);
+        // The XML is only written when required, or when a custom stylesheet has to derive the HTML report from it
+        final File xmlDestination = reports.getXml().getRequired().get() || usesCustomStylesheet(reports) ?
+                calculateReportDestination(task, reports.getXml()) : null;
+
+        final Optional<ReportSummary> summary = analyse(task, sources, changed, xmlDestination, capabilities, metrics);
+        if (summary.isPresent()) {
+            start = System.nanoTime();
+            handleHtmlReport(task, reports, xmlDestination);
+            metrics.phase("htmlTransform", start);
+        }
+        writeMetricsReport(task, reports.getMetrics(), metrics);
+        summary.ifPresent(reportSummary -> {
+            if (reportSummary.filesWithError > 0) {
+                final String message = getMessage(task, reports, reportSummary);
+                if (task.getIgnoreFailures() || !reportSummary.exceedsThresholds(task)) {
                     task.getLogger().warn(message);
                 } else {
                     throw new GradleException(message);
                 }
-            });
+            }
         });
 
     }
 
-    private static void maybeInstallShellcheck(Shellcheck task) {
-        try {
-            if (!task.isUseDocker()) {
-                ShellcheckInstaller.maybeInstallShellcheck(task.getInstaller(), task.getWorkingDir(), task.getLogger());
+    private static void writeMetricsReport(Shellcheck task, ShellcheckMetricsReport report, ShellcheckMetrics metrics) {
+        if (report.getRequired().get()) {
+            try {
+                metrics.write(task.getPath(), report.getOutputLocation().getAsFile().get(), report.getOpenMetricsLocation().getAsFile().get());
+            } catch (IOException e) {
+                throw new GradleException("Error while writing Shellcheck metrics report", e);
             }
-        } catch (IOException | InterruptedException e) {
-            throw new GradleException("Error installing Shellcheck ", e);
         }
     }
 
-    private static void handleHtmlReport(ShellcheckReports reports, File xmlDestination) {
+    private static void maybeInstallShellcheck(Shellcheck task) {
         try {
-            if (reports.getHtml().getRequired().get()) {
-                TransformerFactory factory = TransformerFactory.newInstance();
-                InputStream stylesheet = reports.getHtml().getStylesheet() != null ?
-                        new FileInputStream(reports.getHtml().getStylesheet().asFile()) :
-                        ShellcheckInvoker.class.getClassLoader().getResourceAsStream(SHELLCHECK_NOFRAMES_SORTED_XSL);
-                Source xslt = new StreamSource(stylesheet);
-                Transformer transformer = factory.newTransformer(xslt);
-
-                Source text = new StreamSource(xmlDestination);
-                transformer.transform(text, new StreamResult(reports.getHtml().getOutputLocation().getAsFile().get()));
-            }
-            if (!reports.getXml().getRequired().get()) {
-                Files.deleteIfExists(xmlDestination.toPath());
+            if (!task.getUseDocker().get()) {
+                ShellcheckInstaller.maybeInstallShellcheck(task);
             }
-        } catch (TransformerException | IOException e) {
-            throw new GradleException("Error while handling Shellcheck html report", e);
+        } catch (IOException | InterruptedException e) {
+            throw new GradleException("Error installing Shellcheck ", e);
         }
     }
 
-    private static void handleTtyReport(Shellcheck task, ShellcheckReports reports, File txtDestination) {
+    /**
+     * Probes the shellcheck used by the task, once per build, failing if it is not available.
+     */
+    private static ShellcheckProbes.Capabilities probe(Shellcheck task) {
         try {
-            Optional<String> maybeReport = Optional.empty();
-            if (reports.getTxt().getRequired().get()) {
-                maybeReport = Optional.of(runShellcheck(task, "tty")).map(l -> String.join("\n\n", l));
-
-                FileUtils.writeStringToFile(txtDestination, maybeReport.get(), StandardCharsets.UTF_8);
-            }
-            if (task.isShowViolations()) {
-                task.getLogger().lifecycle(maybeReport.orElse(String.join("\n\n", runShellcheck(task, "tty")).trim()));
+            final List<String> prefix = new ArrayList<>();
+            maybePrepareCommandToUseDocker(prefix, task);
+            final ShellcheckProbes.Capabilities capabilities = task.getProbes().get()
+                    .probe(ShellcheckResultStore.binaryIdentity(task), prefix, shellcheckBinaryOf(task), task.getWorkingDir().get().getAsFile());
+            for (String argument : ShellcheckArguments.tokenize(task.getAdditionalArguments().get())) {
+                final String flag = argument.split("=", 2)[0];
+                if (flag.startsWith("--") && !capabilities.getFlags().isEmpty() && !capabilities.getFlags().contains(flag)) {
+                    task.getLogger().warn("Shellcheck {} does not seem to support {}", capabilities.getVersion(), flag);
+                }
             }
+            return capabilities;
         } catch (IOException | InterruptedException e) {
-            throw new GradleException("Error while handling Shellcheck tty report", e);
+            throw new GradleException("Error while probing Shellcheck", e);
         }
     }
 
-    private static Optional<Document> handleCheckstyleReport(Shellcheck task, File xmlDestination) {
-        try {
-            final List<String> output = runShellcheck(task, "checkstyle");
-            task.getLogger().debug("Shellcheck output: " + output);
-
-            Document mergedCheckstyleXmlReport = mergeCheckstyleXml(output);
+    private static String shellcheckBinaryOf(Shellcheck task) {
+        return task.getUseDocker().get() ? "shellcheck" : ShellcheckInstaller.binaryOf(task);
+    }
 
-            if(!mergedCheckstyleXmlReport.getDocumentElement().hasChildNodes()) {
+    /**
+     * Checks the scripts not found in the result store and writes the checkstyle and tty reports for all of them.
+     * <p>
+     * Reports are written by a {@link ShellcheckPipeline} consumer while shellcheck is still running: first the scripts
+     * reused from the store, then every batch of analysed scripts as soon as it is done. The violations of one script
+     * at a time are streamed from the shellcheck output to the store and the reports, which list scripts in the order
+     * of their paths, so that they do not depend on how the shards went.
+     */
+    private static Optional<ReportSummary> analyse(Shellcheck task, List<File> sources, Set<File> changedFiles, File xmlDestination,
+                                                   ShellcheckProbes.Capabilities capabilities, ShellcheckMetrics metrics) {
+        try {
+            long start = System.nanoTime();
+            // Every shellcheck process of the task, including the ones checking scripts other tasks did not get to
+            final Long deadline = task.getTaskTimeout().isPresent() ? start + task.getTaskTimeout().get().toNanos() : null;
+            final File storeDir = task.getResultStoreDir();
+            final ShellcheckSourceGraph graph = ShellcheckSourceGraph.load(storeDir).update(sources, task.getWorkingDir().get().getAsFile(),
+                    ShellcheckSourceGraph.sourcePathsOf(task.getAdditionalArguments().get()));
+            final ShellcheckGitChanges gitChanges = task.getGitChanges().isPresent() ?
+                    task.getGitChanges().get().at(task.getWorkingDir().get().getAsFile()) : null;
+            // Scripts sourcing a changed file count as changed too
+            final List<File> scripts = gitChanges == null ? sources : sources.stream()
+                    .filter(script -> gitChanges.contains(script) || graph.dependenciesOf(script).stream().anyMatch(gitChanges::contains))
+                    .collect(Collectors.toList());
+            if (gitChanges != null) {
+                task.getLogger().info("Shellcheck will check the {} of {} files changed since {}", scripts.size(), sources.size(), gitChanges.getBase());
+            }
+            metrics.phase("discovery", start);
+            if (scripts.isEmpty()) {
+                task.getLogger().debug("No files specified.");
                 return Optional.empty();
             }
-            writeXmlToFile(mergedCheckstyleXmlReport, xmlDestination);
-            return Optional.of(mergedCheckstyleXmlReport);
-        } catch (IOException | InterruptedException | ParserConfigurationException | SAXException | TransformerException e) {
-            throw new GradleException("Error while handling Shellcheck checkstyle report", e);
+            start = System.nanoTime();
+            final ShellcheckResultStore store = ShellcheckResultStore.open(storeDir, task, capabilities.getVersion());
+            final ShellcheckDurations durations = ShellcheckDurations.load(storeDir);
+            final Set<File> changed = changedScripts(changedFiles, graph);
+
+            final Map<String, String> keys = new LinkedHashMap<>();
+            final Map<String, String> pending = new LinkedHashMap<>();
+            for (File script : scripts) {
+                String key = changed == null || changed.contains(script) ? null : store.indexedKey(script);
+                if (!store.contains(key)) {
+                    key = store.keyOf(script, graph.dependenciesOf(script));
+                }
+                keys.put(script.getPath(), key);
+                store.index(script, key);
+                if (!store.contains(key)) {
+                    pending.put(script.getPath(), key);
+                }
+            }
+            metrics.phase("storeLookup", start);
+            try (ShellcheckResultMemo.Claim claim = task.getResultMemo().get().claim(new HashSet<>(pending.values()))) {
+                start = System.nanoTime();
+                // Scripts claimed by other tasks of the build are reused once analysed, after analysing the rest
+                final Set<String> awaited = new HashSet<>();
+                for (String key : claim.getOthers()) {
+                    final byte[] result = claim.analysed(key);
+                    if (result == null) {
+                        awaited.add(key);
+                    } else if (store.put(key, result)) {
+                        pending.values().remove(key);
+                    }
+                }
+                if (!claim.getOthers().isEmpty()) {
+                    task.getLogger().info("Shellcheck reused the results of {} files analysed by other tasks, and will wait for {} more",
+                            claim.getOthers().size() - awaited.size(), awaited.size());
+                }
+                metrics.phase("memoLookup", start);
+                final ShellcheckSharedStore sharedStore = ShellcheckSharedStore.of(task);
+                if (sharedStore != null && pending.size() > awaited.size()) {
+                    start = System.nanoTime();
+                    final Set<String> missing = pending.values().stream().filter(key -> !awaited.contains(key)).collect(Collectors.toSet());
+                    final Map<String, byte[]> shared = sharedStore.loadAll(missing);
+                    final Set<String> reused = new HashSet<>();
+                    for (Map.Entry<String, byte[]> entry : shared.entrySet()) {
+                        if (store.put(entry.getKey(), entry.getValue())) {
+                            reused.add(entry.getKey());
+                        }
+                    }
+                    pending.values().removeIf(reused::contains);
+                    task.getLogger().info("Shellcheck reused the results of {} files from the shared store at {}", reused.size(), sharedStore);
+                    metrics.phase("sharedStoreLookup", start);
+                }
+                final Map<String, String> analysed = new LinkedHashMap<>(pending);
+                analysed.values().removeIf(awaited::contains);
+                task.getLogger().info("Shellcheck will analyse {} of {} files, the rest are reused from previous executions", analysed.size(), scripts.size());
+
+                final String severity = task.getSeverity().get();
+                final ShellcheckReports reports = task.getReports();
+                final File ttyDestination = reports.getTxt().getRequired().get() ? calculateReportDestination(task, reports.getTxt()) : null;
+                final Logger console = task.getShowViolations().get() ? task.getLogger() : null;
+                final ShellcheckHtmlWriter html = reports.getHtml().getRequired().get() && !usesCustomStylesheet(reports) ?
+                        new ShellcheckHtmlWriter(reports.getHtml().getOutputLocation().getAsFile().get(), reports.getHtml().getPagesLocation().getAsFile().get()) :
+                        null;
+                final Set<String> stored = new HashSet<>();
+                final boolean failFast = task.getFailFast().get() && !task.getIgnoreFailures();
+                try (ShellcheckReportWriter writer = new ShellcheckReportWriter(xmlDestination, ttyDestination, console, html, task.getWorkingDir().get().getAsFile(), metrics)) {
+                    // Reports list the scripts by path, whichever shard gets to them first
+                    writer.orderBy(keys.keySet());
+                    final ShellcheckPipeline.BatchConsumer consumer =
+                            batch -> storeAndWriteAnalysed(batch, store, pending, stored, writer, severity, gitChanges, durations, metrics);
+                    final BooleanSupplier cancelWhen = () -> failFast && exceedsThresholds(task, writer.getErrors(), writer.getWarnings());
+                    boolean cancelled = check(task, capabilities.getOutputFormat(), analysed, store, stored,
+                            () -> writeReused(store, keys, pending, writer, severity, gitChanges, metrics), consumer, cancelWhen, durations, metrics, deadline);
+                    for (String key : claim.getOwned().toArray(new String[0])) {
+                        if (store.contains(key)) {
+                            claim.publish(key, store.read(key));
+                        }
+                    }
+                    if (!cancelled && !awaited.isEmpty()) {
+                        start = System.nanoTime();
+                        final Map<String, String> leftovers = new LinkedHashMap<>();
+                        for (Map.Entry<String, String> entry : pending.entrySet()) {
+                            if (awaited.contains(entry.getValue())) {
+                                final byte[] result = claim.await(entry.getValue());
+                                if (result != null && store.put(entry.getValue(), result)) {
+                                    final List<ShellcheckViolation> violations = store.load(entry.getValue(), entry.getKey());
+                                    metrics.reused(entry.getKey());
+                                    metrics.violations(entry.getKey(), violations.size());
+                                    writer.write(entry.getKey(), reported(severity, gitChanges, entry.getKey(), violations));
+                                } else {
+                                    // The task which claimed the script did not get to it
+                                    leftovers.put(entry.getKey(), entry.getValue());
+                                }
+                            }
+                        }
+                        metrics.phase("memoWait", start);
+                        if (!leftovers.isEmpty()) {
+                            cancelled = check(task, capabilities.getOutputFormat(), leftovers, store, stored, () -> { }, consumer, cancelWhen, durations, metrics, deadline);
+                            analysed.putAll(leftovers);
+                        }
+                    }
+                    if (cancelled) {
+                        task.getLogger().info("Shellcheck stopped after {} of {} files, as soon as maxErrors or maxWarnings was exceeded",
+                                scripts.size() - pending.size() + stored.size(), scripts.size());
+                    }
+                    if (sharedStore != null && task.getSharedStorePush().get()) {
+                        start = System.nanoTime();
+                        pushAnalysed(sharedStore, store, analysed.values());
+                        metrics.phase("sharedStorePush", start);
+                    }
+                    start = System.nanoTime();
+                    // Scripts left out as unchanged keep their results for later executions
+                    store.save(sources);
+                    graph.save(storeDir);
+                    durations.save(storeDir, sources);
+                    final ReportSummary summary = new ReportSummary(writer.getFilesWithViolations(), writer.getSeverities().size(),
+                            writer.getErrors(), writer.getWarnings(), cancelled);
+                    metrics.phase("summary", start);
+                    return Optional.of(summary);
+                }
+            }
+        } catch (IOException | InterruptedException | XMLStreamException e) {
+            throw new GradleException("Error while running Shellcheck", e);
         }
     }
 
-    private static Document mergeCheckstyleXml(List<String> output) throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        Document merged = documentBuilder.parse(new InputSource(new StringReader("<?xml version='1.0' encoding='UTF-8'?><checkstyle version='4.3'></checkstyle>")));
-
-        for(String rawOutput: output) {
-            if (rawOutput.isEmpty() || rawOutput.contains("No files specified.")) {
-                continue;
+    /**
+     * Runs shellcheck over the given scripts through a pipeline which first runs {@code first}, then hands the output of
+     * every batch over to {@code consumer}, and stores an empty result for the scripts shellcheck had nothing to say about.
+     *
+     * @param scripts the keys of the scripts to check, by path
+     * @return whether the pipeline was cancelled
+     */
+    private static boolean check(Shellcheck task, String format, Map<String, String> scripts, ShellcheckResultStore store, Set<String> stored,
+                                 ShellcheckPipeline.Stage first, ShellcheckPipeline.BatchConsumer consumer, BooleanSupplier cancelWhen,
+                                 ShellcheckDurations durations, ShellcheckMetrics metrics, Long deadline) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        try (ShellcheckPipeline pipeline = ShellcheckPipeline.start(first, consumer, cancelWhen)) {
+            int shards = 0;
+            long shardsNanos = 0;
+            if (!scripts.isEmpty()) {
+                final List<File> files = scripts.keySet().stream().map(File::new).collect(Collectors.toList());
+                shards = runShellcheck(task, format, files, durations, pipeline, deadline);
+                shardsNanos = System.nanoTime() - start;
+            }
+            pipeline.finish();
+            metrics.phase("shellcheck", start);
+            if (shards > 0) {
+                // Every process is only accounted for once the pipeline went through its output
+                final double efficiency = metrics.parallelism(shards, shardsNanos);
+                task.getLogger().info("Shellcheck ran {} shards with a parallel efficiency of {}%", shards, Math.round(efficiency * 100));
             }
-            assertContainsXml(rawOutput);
-            String checkstyleFormatted = rawOutput.substring(rawOutput.indexOf("<?xml"));
-
-            Document report = documentBuilder.parse(new InputSource(new StringReader(checkstyleFormatted)));
-            NodeList childNodes = report.getDocumentElement().getChildNodes();
-            for(int i = 0; i < childNodes.getLength(); i++) {
-                Node importedNode = merged.importNode(childNodes.item(i), true);
-                merged.getDocumentElement().appendChild(importedNode);
+            for (Map.Entry<String, String> entry : scripts.entrySet()) {
+                // Scripts left unchecked by a cancelled pipeline are checked again next time
+                if (!stored.contains(entry.getKey()) && !pipeline.isCancelled()) {
+                    store.store(entry.getValue(), Collections.emptyList());
+                }
             }
+            return pipeline.isCancelled();
         }
-        return merged;
     }
 
-    private static void writeXmlToFile(Document merged, File xmlDestination) throws IOException, TransformerException {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        DOMSource source = new DOMSource(merged);
-        FileWriter writer = new FileWriter(xmlDestination);
-        StreamResult streamResult = new StreamResult(writer);
-        transformer.transform(source, streamResult);
+    private static void writeReused(ShellcheckResultStore store, Map<String, String> keys, Map<String, String> pending,
+                                    ShellcheckReportWriter writer, String severity, ShellcheckGitChanges gitChanges,
+                                    ShellcheckMetrics metrics) throws IOException, XMLStreamException {
+        final long start = System.nanoTime();
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            if (!pending.containsKey(entry.getKey())) {
+                final List<ShellcheckViolation> violations = store.load(entry.getValue(), entry.getKey());
+                metrics.reused(entry.getKey());
+                metrics.violations(entry.getKey(), violations.size());
+                writer.write(entry.getKey(), reported(severity, gitChanges, entry.getKey(), violations));
+            }
+        }
+        metrics.phase("reused", start);
     }
 
-    private static File calculateReportDestination(Shellcheck task, ShellcheckReport report) {
-        return report.getRequired().get() ? report.getOutputLocation().getAsFile().get() : new File(task.getTemporaryDir(), report.getOutputLocation().getAsFile().get().getName());
+    /**
+     * Parses the output of a shellcheck invocation, storing and writing the violations of each script it checked. The
+     * comments of a script may come in several runs, e.g. when another script of the batch sources it, so they are
+     * gathered by script, without duplicates, before being stored and written, in the order of the scripts. Comments on
+     * files the invocation did not check on their own, e.g. followed through {@code -x}, are left out: they would be
+     * lost as soon as the script sourcing them is reused from the store. Scripts without comments are handed over to
+     * the reports too, so that the scripts after them are not held back.
+     */
+    private static void storeAndWriteAnalysed(ShellcheckPipeline.Batch batch, ShellcheckResultStore store, Map<String, String> pending,
+                                              Set<String> stored, ShellcheckReportWriter writer, String severity, ShellcheckGitChanges gitChanges,
+                                              ShellcheckDurations durations, ShellcheckMetrics metrics) throws IOException, XMLStreamException {
+        final long start = System.nanoTime();
+        metrics.process(batch.getScripts(), batch.getNanos());
+        durations.record(batch.getScripts(), batch.getNanos());
+        final Map<String, Set<ShellcheckViolation>> analysed = new TreeMap<>();
+        for (String path : batch.getScripts()) {
+            if (pending.containsKey(path)) {
+                analysed.put(path, new LinkedHashSet<>());
+            }
+        }
+        ShellcheckJsonParser.parse(batch.getOutput(), (path, violations) -> {
+            if (analysed.containsKey(path)) {
+                analysed.get(path).addAll(violations);
+            }
+        });
+        for (Map.Entry<String, Set<ShellcheckViolation>> entry : analysed.entrySet()) {
+            final String path = entry.getKey();
+            final List<ShellcheckViolation> violations = new ArrayList<>(entry.getValue());
+            if (!violations.isEmpty()) {
+                store.store(pending.get(path), violations);
+                stored.add(path);
+            }
+            metrics.violations(path, violations.size());
+            writer.write(path, reported(severity, gitChanges, path, violations));
+        }
+        metrics.phase("parse", start);
     }
 
-    private static void assertContainsXml(String potentialXml) {
-        if (!potentialXml.contains("<?xml version")) {
-            throw new GradleException(String.format("Error while executing shellcheck: %s", potentialXml));
+    /**
+     * Shares the results of the scripts analysed by this execution, leaving out the ones a cancelled pipeline did not
+     * get to.
+     */
+    private static void pushAnalysed(ShellcheckSharedStore sharedStore, ShellcheckResultStore store, Collection<String> keys) throws IOException, InterruptedException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (store.contains(key)) {
+                entries.put(key, store.read(key));
+            }
         }
+        sharedStore.storeAll(entries);
     }
 
-    private static String quoted(String txt) {
-        return "\"" + txt + "\"";
+    /**
+     * The violations to report for a script: the ones of at least the given severity, and see
+     * {@link ShellcheckGitChanges#filter}. The result store always keeps all of them.
+     */
+    private static List<ShellcheckViolation> reported(String severity, ShellcheckGitChanges gitChanges, String script, List<ShellcheckViolation> violations) {
+        final int lowest = SEVERITIES.indexOf(severity);
+        final List<ShellcheckViolation> severe = lowest == SEVERITIES.size() - 1 ? violations : violations.stream()
+                .filter(violation -> SEVERITIES.indexOf(violation.getLevel()) <= lowest)
+                .collect(Collectors.toList());
+        return gitChanges == null ? severe : gitChanges.filter(script, severe);
     }
 
-    public static List<String> runShellcheck(Shellcheck task, String format) throws IOException, InterruptedException {
-        if (isNullOrEmpty(task.getSources()) && isNullOrEmpty(task.getSourceFiles())) {
-            return Collections.singletonList("No files specified.");
-        } else {
-            task.getLogger().debug("source dirs: " + task.getSources());
-            task.getLogger().debug("source files: " + task.getSourceFiles());
-        }
-
-        List<String> shellcheckOutput = new ArrayList<>();
-        if (!isNullOrEmpty(task.getSources())) {
-            shellcheckOutput.addAll(runShellcheckOnDirs(task, format, task.getSources().getFiles()));
+    /**
+     * The files Gradle reports as added, modified or removed since the last execution, or null when every script has
+     * to be considered as changed.
+     */
+    private static Set<File> changedFiles(Shellcheck task, InputChanges inputChanges) throws IOException {
+        if (!inputChanges.isIncremental()) {
+            return null;
         }
-        if (!isNullOrEmpty(task.getSourceFiles())) {
-            shellcheckOutput.addAll(runShellcheckOnFiles(task, format, task.getSourceFiles().getFiles()));
+        final Set<File> changed = new HashSet<>();
+        for (FileCollection sources : Arrays.asList(task.getDiscoveredSources(), task.getSourceFiles(), task.getSourcedFiles())) {
+            if (sources == null) {
+                continue;
+            }
+            for (FileChange change : inputChanges.getFileChanges(sources)) {
+                if (change.getFileType() == FileType.FILE) {
+                    changed.add(change.getFile().getCanonicalFile());
+                }
+            }
         }
-        return shellcheckOutput;
+        return changed;
     }
 
-    private static boolean isNullOrEmpty(FileCollection collection) {
-        return collection == null || collection.isEmpty();
+    /**
+     * The changed files along with the scripts sourcing any of them, or null when every script has to be considered as
+     * changed.
+     */
+    private static Set<File> changedScripts(Set<File> changedFiles, ShellcheckSourceGraph graph) {
+        if (changedFiles == null) {
+            return null;
+        }
+        final Set<File> changed = new HashSet<>(changedFiles);
+        changed.addAll(graph.dependentsOf(changedFiles));
+        return changed;
     }
 
-    private static List<String> runShellcheckOnDirs(Shellcheck task, String format, Set<File> sourceDirs) throws IOException, InterruptedException {
-        final List<String> command = new ArrayList<>();
-        maybePrepareCommandToUseDocker(command, task.getWorkingDir(), task.getShellcheckVersion(), task.isUseDocker());
-        final String shellcheckBinary = task.isUseDocker() ? "shellcheck" : task.getShellcheckBinary();
+    private static boolean usesCustomStylesheet(ShellcheckReports reports) {
+        return reports.getHtml().getRequired().get() && reports.getHtml().getStylesheet() != null;
+    }
 
-        StringJoiner joiner = new StringJoiner(" ");
-        for (File sourceDir : sourceDirs) {
-            String canonicalPath = quoted(sourceDir.getCanonicalPath());
-            joiner.add(canonicalPath);
+    /**
+     * The HTML report is written along with the others, unless a custom stylesheet is used, in which case it is
+     * derived from the XML report through the stylesheet, compiled once by the {@link ShellcheckStylesheets} service.
+     */
+    private static void handleHtmlReport(Shellcheck task, ShellcheckReports reports, File xmlDestination) {
+        try {
+            if (usesCustomStylesheet(reports)) {
+                final Templates stylesheet = task.getStylesheets().get().compile(reports.getHtml().getStylesheet().asFile());
+                stylesheet.newTransformer().transform(new StreamSource(xmlDestination),
+                        new StreamResult(reports.getHtml().getOutputLocation().getAsFile().get()));
+            }
+            if (xmlDestination != null && !reports.getXml().getRequired().get()) {
+                Files.deleteIfExists(xmlDestination.toPath());
+            }
+        } catch (TransformerException | IOException e) {
+            throw new GradleException("Error while handling Shellcheck html report", e);
         }
-
-        String cmd = findCommand(joiner.toString()) + " | xargs " + shellcheckBinary + " -f " + format + " --severity=" + task.getSeverity() + " " + task.getAdditionalArguments();
-        command.add("sh");
-        command.add("-c");
-        command.add(cmd);
-
-        task.getLogger().debug("Command to run Shellcheck: " + String.join(" ", command));
-
-        return Collections.singletonList(run(command, task.getWorkingDir(), task.getLogger()).trim());
     }
 
-    private static List<String> runShellcheckOnFiles(Shellcheck task, String format, Set<File> sourceFiles) {
-        final List<String> command = new ArrayList<>();
-        maybePrepareCommandToUseDocker(command, task.getWorkingDir(), task.getShellcheckVersion(), task.isUseDocker());
-        final String shellcheckBinary = task.isUseDocker() ? "shellcheck" : task.getShellcheckBinary();
-        String cmd = shellcheckBinary + " -f " + format + " --severity=" + task.getSeverity() + " " + task.getAdditionalArguments();
-        command.add("sh");
-        command.add("-c");
-
-        return sourceFiles.stream().map(f -> {
-            try {
-                List<String> fileCommand = new ArrayList<>(command);
-                fileCommand.add(cmd + " " + quoted(f.getCanonicalPath()));
+    private static File calculateReportDestination(Shellcheck task, ShellcheckReport report) {
+        return report.getRequired().get() ? report.getOutputLocation().getAsFile().get() : new File(task.getTemporaryDir(), report.getOutputLocation().getAsFile().get().getName());
+    }
 
-                task.getLogger().debug("Command to run Shellcheck: " + String.join(" ", fileCommand));
+    /**
+     * Runs shellcheck over the given scripts, split in up to {@code maxParallelShards} shards run in parallel
+     * through the worker API, posting the file holding the output of every shellcheck invocation to the given pipeline.
+     * Shards are balanced by the durations of the scripts in previous executions.
+     *
+     * @param deadline the {@link System#nanoTime()} by which every shellcheck process has to be done, or null
+     * @return the number of shards
+     */
+    static int runShellcheck(Shellcheck task, String format, List<File> scripts, ShellcheckDurations durations, ShellcheckPipeline pipeline,
+                             Long deadline) throws IOException, InterruptedException {
+        task.getLogger().debug("source dirs: " + task.getSources());
+        task.getLogger().debug("source files: " + task.getSourceFiles());
 
-                return run(fileCommand, task.getWorkingDir(), task.getLogger()).trim();
-            } catch (IOException | InterruptedException e) {
-                throw new GradleException(e.getMessage(), e);
-            }
-        }).collect(Collectors.toList());
+        final List<String> command = new ArrayList<>();
+        maybePrepareCommandToUseDocker(command, task);
+        final String shellcheckBinary = shellcheckBinaryOf(task);
+
+        // Shellcheck is started straight away, without a shell in between, so that neither the arguments nor the scripts
+        // go through shell quoting. Scripts are analysed at the lowest severity, the reports being filtered afterwards,
+        // so that results are shared by tasks of any severity
+        command.add(shellcheckBinary);
+        command.add("-f");
+        command.add(format);
+        command.add("--severity=style");
+        command.addAll(ShellcheckArguments.tokenize(task.getAdditionalArguments().get()));
+
+        final List<List<File>> shards = ShellcheckShardPlanner.plan(scripts, task.getMaxParallelShards().get(), durations::estimate);
+        task.getLogger().info("Shellcheck will run {} shards for {} files", shards.size(), scripts.size());
+        final WorkQueue workQueue = task.getWorkerExecutor().noIsolation();
+        pipeline.expectShards(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            final File outputDir = new File(task.getTemporaryDir(), "shard-" + i);
+            FileUtils.deleteDirectory(outputDir);
+            Files.createDirectories(outputDir.toPath());
+            final List<String> shard = shards.get(i).stream().map(File::getPath).collect(Collectors.toList());
+            workQueue.submit(ShellcheckWorkAction.class, parameters -> {
+                parameters.getCommand().set(command);
+                parameters.getWorkingDir().set(task.getWorkingDir().get().getAsFile());
+                parameters.getScripts().set(shard);
+                parameters.getMaxFilesPerInvocation().set(task.getMaxFilesPerInvocation().get());
+                parameters.getInvocationTimeout().set(task.getInvocationTimeout());
+                parameters.getDeadline().set(deadline);
+                parameters.getOutputDir().set(outputDir);
+                parameters.getPipelineId().set(pipeline.getId());
+                parameters.getProcessSlots().set(task.getProcessSlots());
+            });
+        }
+        workQueue.await();
+        return shards.size();
     }
 
-    private static void maybePrepareCommandToUseDocker(List<String> command, File workingDir, String shellcheckVersion, boolean useDocker) {
-        if (useDocker) {
+    private static void maybePrepareCommandToUseDocker(List<String> command, Shellcheck task) throws IOException, InterruptedException {
+        if (task.getUseDocker().get()) {
+            // Scripts are handed over by their canonical path, so that is the one to mount behind a symlink
+            final File workingDir = task.getWorkingDir().get().getAsFile().getCanonicalFile();
+            final String image = "koalaman/shellcheck-alpine:" + task.getShellcheckVersion().get();
+            if (task.getReuseDockerContainer().get()) {
+                command.addAll(task.getDockerContainers().get().execCommand(image, workingDir));
+                return;
+            }
             command.add("docker");
             command.add("run");
             command.add("--rm");
+            // An init process stops shellcheck when the docker client forwards it a timeout
+            command.add("--init");
 
             command.add("-v");
             command.add(workingDir.getAbsolutePath() + ":" + workingDir.getAbsolutePath());
             command.add("-w");
             command.add(workingDir.getAbsolutePath());
-            command.add("koalaman/shellcheck-alpine:" + shellcheckVersion);
+            command.add(image);
         }
     }
 
-    private static String findCommand(String sources) {
-        return "/usr/bin/find " + sources + " -type f \\( -name '*.sh' -o -name '*.bash' -o -name '*.ksh' -o -name '*.bashrc' -o -name '*.bash_profile' -o -name '*.bash_login' -o -name '*.bash_logout' \\)";
+    private static String getMessage(Shellcheck task, ShellcheckReports reports, ReportSummary reportSummary) {
+        return "Shellcheck violations were found." + getReportUrlMessage(reports) + "" + getViolationMessage(reportSummary)
+                + getThresholdsMessage(task, reportSummary);
     }
 
-    private static String getMessage(ShellcheckReports reports, ReportSummary reportSummary) {
-        return "Shellcheck violations were found." + getReportUrlMessage(reports) + "" + getViolationMessage(reportSummary);
+    private static boolean exceedsThresholds(Shellcheck task, int errors, int warnings) {
+        return errors > task.getMaxErrors().get() || warnings > task.getMaxWarnings().get();
     }
 
-    private static Optional<ReportSummary> calculateReportSummary(Document reportXml) {
-        NodeList fileNodes = reportXml.getDocumentElement().getChildNodes();
-        Set<String> filesWithError = new HashSet<>();
-        Set<String> violationsBySeverityCount = new HashSet<>();
-        for (int i = 0; i < fileNodes.getLength(); i++) {
-            Node fileNode = fileNodes.item(i);
-            if (fileNode.getNodeType() == Node.ELEMENT_NODE) {
-                final NodeList errorNodes = fileNode.getChildNodes();
-                for (int j = 0; j < errorNodes.getLength(); j++) {
-                    Node errorNode = errorNodes.item(j);
-                    if (errorNode.getNodeType() == Node.ELEMENT_NODE) {
-                        if ("error".equals(errorNode.getNodeName())) {
-                            filesWithError.add(fileNode.getAttributes().getNamedItem("name").getNodeValue());
-                            violationsBySeverityCount.add(errorNode.getAttributes().getNamedItem("severity").getNodeValue());
-                        }
-                    }
-                }
-            }
-        }
-        return filesWithError.size() > 0 ? Optional.of(new ReportSummary(filesWithError.size(), violationsBySeverityCount.size())) : Optional.empty();
+    private static String getThresholdsMessage(Shellcheck task, ReportSummary reportSummary) {
+        final String thresholds = "\nShellcheck errors: " + reportSummary.errors + " (maxErrors " + task.getMaxErrors().get() + ")"
+                + ", warnings: " + reportSummary.warnings + " (maxWarnings " + task.getMaxWarnings().get() + ")";
+        return reportSummary.cancelled ?
+                thresholds + "\nShellcheck stopped as soon as the thresholds were exceeded, the reports only include the files checked until then." :
+                thresholds;
     }
 
     private static String getReportUrlMessage(ShellcheckReports reports) {
@@ -294,10 +571,20 @@ public class ShellcheckInvoker {
     static class ReportSummary {
         private final int filesWithError;
         private final int violationsBySeverity;
+        private final int errors;
+        private final int warnings;
+        private final boolean cancelled;
 
-        public ReportSummary(int filesWithError, int violationsBySeverity) {
+        public ReportSummary(int filesWithError, int violationsBySeverity, int errors, int warnings, boolean cancelled) {
             this.filesWithError = filesWithError;
             this.violationsBySeverity = violationsBySeverity;
+            this.errors = errors;
+            this.warnings = warnings;
+            this.cancelled = cancelled;
+        }
+
+        boolean exceedsThresholds(Shellcheck task) {
+            return cancelled || ShellcheckInvoker.exceedsThresholds(task, errors, warnings);
         }
     }
 }
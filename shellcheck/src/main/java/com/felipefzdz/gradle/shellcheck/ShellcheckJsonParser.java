@@ -0,0 +1,339 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Streaming parser of the output of {@code shellcheck -f json1}, and of {@code shellcheck -f json} for versions older
+ * than 0.7.0.
+ * <p>
+ * Each shellcheck invocation prints a single {@code {"comments":[...]}} document, or a bare {@code [...]} array of
+ * comments with {@code json}, on its own line, which may be as large as the amount of violations found. The output is
+ * written to a file by the worker running shellcheck, and documents are read from that file one comment at a time and
+ * handed over file by file, so only the comments of the file being read are held in memory.
+ */
+class ShellcheckJsonParser {
+
+    private static final String NO_FILES_SPECIFIED = "No files specified.";
+    private static final int MAX_OTHER_OUTPUT = 8192;
+
+    /**
+     * Receives the comments found for a file. Consecutive comments of the same file are handed over together.
+     */
+    interface ViolationsConsumer {
+        void accept(String file, List<ShellcheckViolation> violations) throws IOException;
+    }
+
+    private final Reader reader;
+    private final ViolationsConsumer consumer;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private String currentFile;
+    private List<ShellcheckViolation> currentViolations = new ArrayList<>();
+
+    private ShellcheckJsonParser(Reader reader, ViolationsConsumer consumer) {
+        this.reader = reader;
+        this.consumer = consumer;
+    }
+
+    static void parse(File output, ViolationsConsumer consumer) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(output.toPath()), StandardCharsets.UTF_8)) {
+            parse(reader, consumer);
+        }
+    }
+
+    static void parse(Reader reader, ViolationsConsumer consumer) throws IOException {
+        new ShellcheckJsonParser(reader, consumer).parseOutput();
+    }
+
+    private void parseOutput() throws IOException {
+        boolean documentFound = false;
+        final StringBuilder otherOutput = new StringBuilder();
+        while (peek() != -1) {
+            if (peek() == '{') {
+                parseDocument();
+                documentFound = true;
+                skipLine(null);
+            } else if (peek() == '[') {
+                parseComments();
+                documentFound = true;
+                skipLine(null);
+            } else {
+                skipLine(otherOutput);
+            }
+        }
+        flush();
+        final String other = otherOutput.toString().trim();
+        if (!documentFound && !other.isEmpty() && !other.contains(NO_FILES_SPECIFIED)) {
+            throw new GradleException(String.format("Error while executing shellcheck: %s", other));
+        }
+    }
+
+    private void parseDocument() throws IOException {
+        expect('{');
+        if (skipWhitespaceAndPeek() == '}') {
+            read();
+            return;
+        }
+        do {
+            final String key = readKey();
+            if ("comments".equals(key)) {
+                parseComments();
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void parseComments() throws IOException {
+        expect('[');
+        if (skipWhitespaceAndPeek() == ']') {
+            read();
+            return;
+        }
+        do {
+            parseComment();
+        } while (nextMember(']'));
+    }
+
+    private void parseComment() throws IOException {
+        String file = null;
+        String level = null;
+        String message = null;
+        int line = 0;
+        int endLine = 0;
+        int column = 0;
+        int endColumn = 0;
+        int code = 0;
+        expect('{');
+        if (skipWhitespaceAndPeek() == '}') {
+            read();
+        } else {
+            do {
+                final String key = readKey();
+                switch (key) {
+                    case "file":
+                        file = readString();
+                        break;
+                    case "level":
+                        level = readString();
+                        break;
+                    case "message":
+                        message = readString();
+                        break;
+                    case "line":
+                        line = readInt();
+                        break;
+                    case "endLine":
+                        endLine = readInt();
+                        break;
+                    case "column":
+                        column = readInt();
+                        break;
+                    case "endColumn":
+                        endColumn = readInt();
+                        break;
+                    case "code":
+                        code = readInt();
+                        break;
+                    default:
+                        skipValue();
+                }
+            } while (nextMember('}'));
+        }
+        if (!Objects.equals(file, currentFile)) {
+            flush();
+            currentFile = file;
+        }
+        currentViolations.add(new ShellcheckViolation(file, line, endLine, column, endColumn, level, code, message));
+    }
+
+    private void flush() throws IOException {
+        if (!currentViolations.isEmpty()) {
+            consumer.accept(currentFile, currentViolations);
+            currentViolations = new ArrayList<>();
+        }
+    }
+
+    private String readKey() throws IOException {
+        skipWhitespaceAndPeek();
+        final String key = readString();
+        expect(':');
+        return key;
+    }
+
+    /**
+     * Consumes the separator after a member, returning whether another member follows.
+     */
+    private boolean nextMember(char end) throws IOException {
+        final int c = skipWhitespaceAndPeek();
+        read();
+        if (c == ',') {
+            return true;
+        }
+        if (c != end) {
+            throw malformed();
+        }
+        return false;
+    }
+
+    private void skipValue() throws IOException {
+        final int c = skipWhitespaceAndPeek();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            final char end = c == '{' ? '}' : ']';
+            read();
+            if (skipWhitespaceAndPeek() == end) {
+                read();
+                return;
+            }
+            do {
+                if (end == '}') {
+                    readKey();
+                }
+                skipValue();
+            } while (nextMember(end));
+        } else {
+            readScalar();
+        }
+    }
+
+    private int readInt() throws IOException {
+        skipWhitespaceAndPeek();
+        final String scalar = readScalar();
+        if ("null".equals(scalar)) {
+            return 0;
+        }
+        try {
+            return (int) Double.parseDouble(scalar);
+        } catch (NumberFormatException e) {
+            throw malformed();
+        }
+    }
+
+    private String readScalar() throws IOException {
+        final StringBuilder scalar = new StringBuilder();
+        int c;
+        while ((c = peek()) != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+            scalar.append((char) read());
+        }
+        if (scalar.length() == 0) {
+            throw malformed();
+        }
+        return scalar.toString();
+    }
+
+    private String readString() throws IOException {
+        if (skipWhitespaceAndPeek() == 'n') {
+            readScalar();
+            return null;
+        }
+        expect('"');
+        final StringBuilder string = new StringBuilder();
+        int c;
+        while ((c = read()) != '"') {
+            if (c == -1) {
+                throw malformed();
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'u':
+                        final char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            hex[i] = (char) read();
+                        }
+                        try {
+                            string.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed();
+                        }
+                        break;
+                    case -1:
+                        throw malformed();
+                    default:
+                        string.append((char) c);
+                }
+            } else {
+                string.append((char) c);
+            }
+        }
+        return string.toString();
+    }
+
+    private void skipLine(StringBuilder into) throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            if (into != null && into.length() < MAX_OTHER_OUTPUT) {
+                into.append((char) c);
+            }
+        }
+        if (into != null && into.length() < MAX_OTHER_OUTPUT) {
+            into.append('\n');
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (skipWhitespaceAndPeek() != expected) {
+            throw malformed();
+        }
+        read();
+    }
+
+    private int skipWhitespaceAndPeek() throws IOException {
+        while (peek() != -1 && Character.isWhitespace(peek())) {
+            read();
+        }
+        return peek();
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            final int read = reader.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return -1;
+            }
+            position = 0;
+            limit = read;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        final int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private static GradleException malformed() {
+        return new GradleException("Error while parsing shellcheck json1 output: malformed document");
+    }
+}
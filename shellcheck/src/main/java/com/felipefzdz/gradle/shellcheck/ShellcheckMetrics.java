@@ -0,0 +1,208 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import groovy.json.JsonOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Gathers where a Shellcheck task spends its time, to be written as the metrics report.
+ * <p>
+ * Phases are timed on the wall clock as they run. Shellcheck checks many files per process, so the duration of every
+ * analysed file is estimated by splitting the duration of its process according to the size of its files; it is exact
+ * with {@code maxFilesPerInvocation = 1}. Files are only tracked when the report is required.
+ * <p>
+ * The parallel efficiency is the time spent in shellcheck processes over the time the shards were given, i.e. their
+ * number times the wall time until the last one finished: shards finishing early bring it down.
+ */
+class ShellcheckMetrics {
+
+    private static final int MAX_OPEN_METRICS_FILES = 100;
+
+    private final boolean trackFiles;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final List<ProcessMetrics> processes = new ArrayList<>();
+    private final Map<String, FileMetrics> files = new LinkedHashMap<>();
+    private int shards;
+    private double efficiency;
+
+    ShellcheckMetrics(boolean trackFiles) {
+        this.trackFiles = trackFiles;
+    }
+
+    /**
+     * Adds the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}, to the given phase.
+     */
+    synchronized void phase(String phase, long startNanos) {
+        phaseNanos(phase, System.nanoTime() - startNanos);
+    }
+
+    synchronized void phaseNanos(String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    synchronized void process(List<String> scripts, long nanos) {
+        final long[] bytes = new long[scripts.size()];
+        long totalBytes = 0;
+        for (int i = 0; i < scripts.size(); i++) {
+            bytes[i] = new File(scripts.get(i)).length();
+            totalBytes += bytes[i];
+        }
+        processes.add(new ProcessMetrics(scripts.size(), totalBytes, nanos));
+        if (trackFiles) {
+            for (int i = 0; i < scripts.size(); i++) {
+                final double share = totalBytes > 0 ? (double) bytes[i] / totalBytes : 1.0 / scripts.size();
+                final FileMetrics file = file(scripts.get(i));
+                file.bytes = bytes[i];
+                file.nanos += (long) (nanos * share);
+            }
+        }
+    }
+
+    /**
+     * Computes the parallel efficiency of the given number of shards, from the processes run so far.
+     */
+    synchronized double parallelism(int shards, long wallNanos) {
+        final long busyNanos = processes.stream().mapToLong(process -> process.nanos).sum();
+        this.shards = shards;
+        this.efficiency = shards > 0 && wallNanos > 0 ? Math.min(1, (double) busyNanos / shards / wallNanos) : 0;
+        return efficiency;
+    }
+
+    synchronized void reused(String script) {
+        if (trackFiles) {
+            final FileMetrics file = file(script);
+            file.bytes = new File(script).length();
+            file.reused = true;
+        }
+    }
+
+    synchronized void violations(String script, int violations) {
+        if (trackFiles) {
+            file(script).violations += violations;
+        }
+    }
+
+    private FileMetrics file(String script) {
+        return files.computeIfAbsent(script, FileMetrics::new);
+    }
+
+    /**
+     * Writes the metrics as JSON to {@code json} and in the OpenMetrics text format to {@code openMetrics}, which only
+     * includes the slowest files to keep the amount of series bounded.
+     */
+    synchronized void write(String taskPath, File json, File openMetrics) throws IOException {
+        final List<FileMetrics> slowest = files.values().stream()
+                .sorted(Comparator.comparingLong((FileMetrics file) -> file.nanos).reversed().thenComparing(file -> file.path))
+                .collect(Collectors.toList());
+
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("task", taskPath);
+        final Map<String, Object> phasesMs = new LinkedHashMap<>();
+        phases.forEach((phase, nanos) -> phasesMs.put(phase, millis(nanos)));
+        report.put("phases", phasesMs);
+        final List<Map<String, Object>> processesJson = new ArrayList<>();
+        for (ProcessMetrics process : processes) {
+            final Map<String, Object> processJson = new LinkedHashMap<>();
+            processJson.put("files", process.files);
+            processJson.put("bytes", process.bytes);
+            processJson.put("durationMs", millis(process.nanos));
+            processesJson.add(processJson);
+        }
+        report.put("processes", processesJson);
+        final Map<String, Object> parallelism = new LinkedHashMap<>();
+        parallelism.put("shards", shards);
+        parallelism.put("efficiency", Math.round(efficiency * 1_000) / 1_000.0);
+        report.put("parallelism", parallelism);
+        final List<Map<String, Object>> filesJson = new ArrayList<>();
+        for (FileMetrics file : slowest) {
+            final Map<String, Object> fileJson = new LinkedHashMap<>();
+            fileJson.put("path", file.path);
+            fileJson.put("bytes", file.bytes);
+            fileJson.put("durationMs", millis(file.nanos));
+            fileJson.put("violations", file.violations);
+            fileJson.put("reused", file.reused);
+            filesJson.add(fileJson);
+        }
+        report.put("files", filesJson);
+        Files.createDirectories(json.getAbsoluteFile().getParentFile().toPath());
+        Files.write(json.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(report)).getBytes(StandardCharsets.UTF_8));
+
+        Files.createDirectories(openMetrics.getAbsoluteFile().getParentFile().toPath());
+        try (Writer out = Files.newBufferedWriter(openMetrics.toPath(), StandardCharsets.UTF_8)) {
+            final String task = "task=\"" + escapeLabel(taskPath) + "\"";
+            out.write("# TYPE shellcheck_phase_seconds gauge\n");
+            out.write("# HELP shellcheck_phase_seconds Wall time spent in every phase of the task.\n");
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                out.write("shellcheck_phase_seconds{" + task + ",phase=\"" + escapeLabel(phase.getKey()) + "\"} " + seconds(phase.getValue()) + "\n");
+            }
+            out.write("# TYPE shellcheck_processes gauge\n");
+            out.write("# HELP shellcheck_processes Shellcheck processes run by the task.\n");
+            out.write("shellcheck_processes{" + task + "} " + processes.size() + "\n");
+            out.write("# TYPE shellcheck_process_seconds gauge\n");
+            out.write("# HELP shellcheck_process_seconds Wall time of the slowest Shellcheck process run by the task.\n");
+            out.write("shellcheck_process_seconds{" + task + ",stat=\"max\"} " + seconds(processes.stream().mapToLong(p -> p.nanos).max().orElse(0)) + "\n");
+            out.write("shellcheck_process_seconds{" + task + ",stat=\"sum\"} " + seconds(processes.stream().mapToLong(p -> p.nanos).sum()) + "\n");
+            out.write("# TYPE shellcheck_parallel_efficiency gauge\n");
+            out.write("# HELP shellcheck_parallel_efficiency Time spent in Shellcheck processes over the time given to the shards.\n");
+            out.write("shellcheck_parallel_efficiency{" + task + "} " + String.format(Locale.ROOT, "%.3f", efficiency) + "\n");
+            out.write("# TYPE shellcheck_file_seconds gauge\n");
+            out.write("# HELP shellcheck_file_seconds Estimated time Shellcheck spent analysing the slowest files.\n");
+            for (FileMetrics file : slowest.subList(0, Math.min(MAX_OPEN_METRICS_FILES, slowest.size()))) {
+                out.write("shellcheck_file_seconds{" + task + ",file=\"" + escapeLabel(file.path) + "\"} " + seconds(file.nanos) + "\n");
+            }
+            out.write("# TYPE shellcheck_file_bytes gauge\n");
+            out.write("# HELP shellcheck_file_bytes Size of the slowest files.\n");
+            for (FileMetrics file : slowest.subList(0, Math.min(MAX_OPEN_METRICS_FILES, slowest.size()))) {
+                out.write("shellcheck_file_bytes{" + task + ",file=\"" + escapeLabel(file.path) + "\"} " + file.bytes + "\n");
+            }
+            out.write("# EOF\n");
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1_000_000_000.0);
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class ProcessMetrics {
+        private final int files;
+        private final long bytes;
+        private final long nanos;
+
+        private ProcessMetrics(int files, long bytes, long nanos) {
+            this.files = files;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    private static class FileMetrics {
+        private final String path;
+        private long bytes;
+        private long nanos;
+        private int violations;
+        private boolean reused;
+
+        private FileMetrics(String path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.OutputFile;
+
+public interface ShellcheckMetricsReport extends ShellcheckReport {
+
+    /**
+     * The location on the filesystem to generate the same metrics to, in the OpenMetrics text format.
+     */
+    @OutputFile
+    RegularFileProperty getOpenMetricsLocation();
+}
@@ -0,0 +1,210 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hands the output of every shellcheck batch over from the workers running it to a consumer thread of the task, as
+ * soon as the batch is done, so that reports are written while the remaining batches are still being checked.
+ * <p>
+ * Workers run in the same JVM as the task and find the pipeline through its id. The queue between them is bounded:
+ * workers wait for the consumer when it falls behind. The pipeline can be cancelled, which destroys the shellcheck
+ * processes still running and lets workers know they should not start new ones.
+ */
+class ShellcheckPipeline implements AutoCloseable {
+
+    private static final Map<String, ShellcheckPipeline> RUNNING = new ConcurrentHashMap<>();
+    private static final Batch SHARD_DONE = new Batch(new File(""), Collections.emptyList(), 0);
+    private static final int CAPACITY = 16;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Work done by the consumer thread.
+     */
+    interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * Receives a batch once shellcheck is done with it.
+     */
+    interface BatchConsumer {
+        void accept(Batch batch) throws Exception;
+    }
+
+    /**
+     * The scripts checked by a shellcheck invocation, along with the file holding its output and how long it took.
+     */
+    static class Batch {
+        private final File output;
+        private final List<String> scripts;
+        private final long nanos;
+
+        Batch(File output, List<String> scripts, long nanos) {
+            this.output = output;
+            this.scripts = scripts;
+            this.nanos = nanos;
+        }
+
+        File getOutput() {
+            return output;
+        }
+
+        List<String> getScripts() {
+            return scripts;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final BlockingQueue<Batch> outputs = new ArrayBlockingQueue<>(CAPACITY);
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final Thread consumer;
+    private volatile int expectedShards = -1;
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+
+    private ShellcheckPipeline(Stage first, BatchConsumer consumer, BooleanSupplier cancelWhen) {
+        this.consumer = new Thread(() -> consume(first, consumer, cancelWhen), "shellcheck-pipeline");
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * Starts a consumer thread which runs {@code first} and then hands every batch posted to the pipeline over
+     * to {@code consumer}, until all the expected shards are done. The pipeline is cancelled as soon as
+     * {@code cancelWhen} holds after any of those steps.
+     */
+    static ShellcheckPipeline start(Stage first, BatchConsumer consumer, BooleanSupplier cancelWhen) {
+        final ShellcheckPipeline pipeline = new ShellcheckPipeline(first, consumer, cancelWhen);
+        RUNNING.put(pipeline.id, pipeline);
+        pipeline.consumer.start();
+        return pipeline;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the amount of shards posting to the pipeline. Every one of them has to call {@link #shardDone(String)}.
+     */
+    void expectShards(int shards) {
+        expectedShards = shards;
+    }
+
+    /**
+     * Posts a batch, waiting while the queue is full. Ignored once the pipeline is closed.
+     */
+    static void post(String id, Batch batch) throws InterruptedException {
+        final ShellcheckPipeline pipeline = RUNNING.get(id);
+        while (pipeline != null && !pipeline.closed && !pipeline.outputs.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            // waiting for the consumer
+        }
+    }
+
+    static void shardDone(String id) throws InterruptedException {
+        post(id, SHARD_DONE);
+    }
+
+    /**
+     * Keeps track of a running shellcheck process, so that it is destroyed if the pipeline is cancelled.
+     */
+    static void track(String id, Process process) {
+        final ShellcheckPipeline pipeline = RUNNING.get(id);
+        if (pipeline != null) {
+            pipeline.processes.add(process);
+            if (pipeline.cancelled) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    static void untrack(String id, Process process) {
+        final ShellcheckPipeline pipeline = RUNNING.get(id);
+        if (pipeline != null) {
+            pipeline.processes.remove(process);
+        }
+    }
+
+    /**
+     * Whether the pipeline has been cancelled, or no longer exists, so that no more work should be done for it.
+     */
+    static boolean isCancelled(String id) {
+        final ShellcheckPipeline pipeline = RUNNING.get(id);
+        return pipeline == null || pipeline.cancelled;
+    }
+
+    /**
+     * Stops handing batch outputs over to the consumer and destroys the shellcheck processes still running.
+     */
+    void cancel() {
+        cancelled = true;
+        closed = true;
+        for (Process process : processes) {
+            process.destroyForcibly();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Waits for the consumer to handle everything posted by the expected shards, failing if it did not succeed.
+     */
+    void finish() throws InterruptedException {
+        if (expectedShards < 0) {
+            expectedShards = 0;
+        }
+        consumer.join();
+        if (failure != null) {
+            throw new GradleException("Error while writing Shellcheck reports", failure);
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        RUNNING.remove(id);
+        consumer.join();
+    }
+
+    private void consume(Stage first, BatchConsumer consumer, BooleanSupplier cancelWhen) {
+        try {
+            first.run();
+            if (cancelWhen.getAsBoolean()) {
+                cancel();
+            }
+            int doneShards = 0;
+            while (!closed && (expectedShards < 0 || doneShards < expectedShards)) {
+                final Batch batch = outputs.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == SHARD_DONE) {
+                    doneShards++;
+                } else if (batch != null) {
+                    consumer.accept(batch);
+                    if (cancelWhen.getAsBoolean()) {
+                        cancel();
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            failure = t;
+            closed = true;
+        }
+    }
+}
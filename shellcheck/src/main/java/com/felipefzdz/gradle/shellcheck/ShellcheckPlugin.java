@@ -1,66 +1,173 @@
 package com.felipefzdz.gradle.shellcheck;
 
+import org.gradle.api.Action;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.attributes.Category;
+import org.gradle.api.attributes.Usage;
 import org.gradle.api.file.Directory;
-import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.ProjectLayout;
-import org.gradle.api.internal.ConventionMapping;
-import org.gradle.api.internal.IConventionAware;
+import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.ReportingBasePlugin;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.reporting.ReportingExtension;
+import org.gradle.api.tasks.TaskProvider;
 
 import java.io.File;
-import java.util.concurrent.Callable;
+import java.util.Collections;
 
 public class ShellcheckPlugin implements Plugin<Project> {
 
+    private static final String RESULTS_USAGE = "shellcheck-results";
+
     protected ShellcheckExtension extension;
 
     public void apply(Project project) {
         project.getPluginManager().apply(ReportingBasePlugin.class);
-        extension = (ShellcheckExtension) project.getExtensions().create("shellcheck", ShellcheckExtension.class, project);
-        project.getTasks().register("shellcheck", Shellcheck.class);
-        project.getTasks().withType(Shellcheck.class).configureEach(task -> configureTask((Shellcheck) task, project));
+        extension = (ShellcheckExtension) project.getExtensions().create("shellcheck", ShellcheckExtension.class);
+        extension.getMaxParallelShards().convention(project.getGradle().getStartParameter().getMaxWorkerCount());
+        extension.getChangedSince().convention(project.getProviders().gradleProperty(ShellcheckGitChanges.CHANGED_SINCE_PROPERTY));
+        extension.getSharedStore().convention(project.getProviders().gradleProperty(ShellcheckSharedStore.SHARED_STORE_PROPERTY));
+        extension.getSharedStorePush().convention(project.getProviders().gradleProperty(ShellcheckSharedStore.SHARED_STORE_PUSH_PROPERTY)
+                .map(Boolean::valueOf).orElse(false));
+        Provider<ShellcheckDockerContainers> dockerContainers = project.getGradle().getSharedServices()
+                .registerIfAbsent("shellcheckDockerContainers", ShellcheckDockerContainers.class, spec -> { });
+        Provider<ShellcheckStylesheets> stylesheets = project.getGradle().getSharedServices()
+                .registerIfAbsent("shellcheckStylesheets", ShellcheckStylesheets.class, spec -> { });
+        Provider<ShellcheckProbes> probes = project.getGradle().getSharedServices()
+                .registerIfAbsent("shellcheckProbes", ShellcheckProbes.class, spec -> { });
+        Provider<ShellcheckProcessSlots> processSlots = project.getGradle().getSharedServices()
+                .registerIfAbsent("shellcheckProcessSlots", ShellcheckProcessSlots.class, spec -> spec.getParameters().getMaxProcesses()
+                        .set(project.getProviders().gradleProperty(ShellcheckProcessSlots.MAX_PROCESSES_PROPERTY).map(Integer::valueOf)
+                                .orElse(project.getGradle().getStartParameter().getMaxWorkerCount())));
+        Provider<ShellcheckResultMemo> resultMemo = project.getGradle().getSharedServices()
+                .registerIfAbsent("shellcheckResultMemo", ShellcheckResultMemo.class, spec -> { });
+        TaskProvider<Shellcheck> shellcheck = project.getTasks().register("shellcheck", Shellcheck.class);
+        project.getTasks().withType(Shellcheck.class).configureEach(task ->
+                configureTask((Shellcheck) task, project, dockerContainers, stylesheets, probes, processSlots, resultMemo));
+        project.getTasks().register("shellcheckWatch", ShellcheckWatch.class, task -> {
+            task.setDescription("Checks the shell scripts every time they change, until the build is cancelled.");
+            // Every check goes through docker exec into the same container, instead of starting a new one
+            task.getReuseDockerContainer().convention(true);
+        });
+        configureAggregation(project, shellcheck);
+    }
+
+    /**
+     * Shares the checkstyle report of the {@code shellcheck} task with other projects, and merges the reports of the
+     * projects added to {@code shellcheckAggregation}, or of this project alone, with {@code shellcheckAggregateReport}.
+     */
+    private void configureAggregation(Project project, TaskProvider<Shellcheck> shellcheck) {
+        ObjectFactory objects = project.getObjects();
+        Action<AttributeContainer> results = attributes -> {
+            attributes.attribute(Category.CATEGORY_ATTRIBUTE, objects.named(Category.class, Category.VERIFICATION));
+            attributes.attribute(Usage.USAGE_ATTRIBUTE, objects.named(Usage.class, RESULTS_USAGE));
+        };
+        project.getConfigurations().create("shellcheckResultsElements", configuration -> {
+            configuration.setDescription("The checkstyle report of the shellcheck task.");
+            configuration.setCanBeConsumed(true);
+            configuration.setCanBeResolved(false);
+            configuration.attributes(results);
+            configuration.getOutgoing().artifact(shellcheck.map(task -> task.getReports().getXml().getOutputLocation().get()),
+                    artifact -> artifact.builtBy(shellcheck));
+        });
+        Configuration aggregation = project.getConfigurations().create("shellcheckAggregation", configuration -> {
+            configuration.setDescription("The projects whose Shellcheck reports are aggregated, this project alone by default.");
+            configuration.setCanBeConsumed(false);
+            configuration.setCanBeResolved(false);
+            configuration.defaultDependencies(dependencies ->
+                    dependencies.add(project.getDependencies().project(Collections.singletonMap("path", project.getPath()))));
+        });
+        Configuration aggregationResults = project.getConfigurations().create("shellcheckAggregationResults", configuration -> {
+            configuration.setDescription("The Shellcheck reports to aggregate.");
+            configuration.setCanBeConsumed(false);
+            configuration.setCanBeResolved(true);
+            configuration.extendsFrom(aggregation);
+            configuration.attributes(results);
+        });
+        project.getTasks().register("shellcheckAggregateReport", ShellcheckAggregateReport.class, task -> {
+            task.setDescription("Merges the Shellcheck reports of the projects added to shellcheckAggregation, without checking the scripts again.");
+            task.getResults().from(aggregationResults);
+            task.getDestinationDir().convention(project.getExtensions().getByType(ReportingExtension.class).getBaseDirectory().dir("shellcheck/aggregate"));
+        });
     }
 
-    private void configureTask(Shellcheck task, Project project) {
-        configureTaskConventionMapping(task, project);
-        configureReportsConventionMapping(task, project);
+    private void configureTask(Shellcheck task, Project project, Provider<ShellcheckDockerContainers> dockerContainers,
+                               Provider<ShellcheckStylesheets> stylesheets, Provider<ShellcheckProbes> probes,
+                               Provider<ShellcheckProcessSlots> processSlots, Provider<ShellcheckResultMemo> resultMemo) {
+        configureTaskConventions(task, project);
+        configureReportsConventions(task, project);
+        task.getDockerContainers().convention(dockerContainers);
+        task.usesService(dockerContainers);
+        task.getStylesheets().convention(stylesheets);
+        task.usesService(stylesheets);
+        task.getProbes().convention(probes);
+        task.usesService(probes);
+        task.getProcessSlots().convention(processSlots);
+        task.usesService(processSlots);
+        task.getResultMemo().convention(resultMemo);
+        task.usesService(resultMemo);
     }
 
-    private void configureTaskConventionMapping(Shellcheck task, Project project) {
-        ConventionMapping taskMapping = task.getConventionMapping();
-        taskMapping.map("sources", (Callable<FileCollection>) () -> extension.getSources());
-        taskMapping.map("sourceFiles", (Callable<FileCollection>) () -> extension.getSourceFiles());
-        taskMapping.map("ignoreFailures", (Callable<Boolean>) () -> extension.isIgnoreFailures());
-        taskMapping.map("showViolations", (Callable<Boolean>) () -> extension.isShowViolations());
-        taskMapping.map("useDocker", (Callable<Boolean>) () -> extension.isUseDocker());
-        taskMapping.map("shellcheckVersion", (Callable<String>) () -> extension.getShellcheckVersion());
-        taskMapping.map("severity", (Callable<String>) () -> extension.getSeverity());
-        taskMapping.map("shellcheckBinary", (Callable<String>) () -> extension.getShellcheckBinary());
-        taskMapping.map("installer", (Callable<String>) () -> extension.getInstaller());
-        taskMapping.map("workingDir", (Callable<File>) () -> extension.getWorkingDir());
-        taskMapping.map("additionalArguments", (Callable<String>) () -> extension.getAdditionalArguments());
-        final ConventionMapping extensionMapping = conventionMappingOf(extension);
-        extensionMapping.map("reportsDir", (Callable<File>) () -> project.getExtensions().getByType(ReportingExtension.class).file("shellcheck"));
+    private void configureTaskConventions(Shellcheck task, Project project) {
+        task.getSources().convention(extension.getSources());
+        task.getSourceFiles().convention(extension.getSourceFiles());
+        task.getScriptExtensions().convention(extension.getScriptExtensions());
+        task.getIncludes().convention(extension.getIncludes());
+        task.getExcludes().convention(extension.getExcludes());
+        task.getShebangDetection().convention(extension.getShebangDetection());
+        task.getIgnoreFailuresProperty().convention(project.getProviders().provider(() -> extension.isIgnoreFailures()));
+        task.getShowViolations().convention(extension.getShowViolations());
+        task.getUseDocker().convention(extension.getUseDocker());
+        task.getReuseDockerContainer().convention(extension.getReuseDockerContainer());
+        task.getShellcheckVersion().convention(extension.getShellcheckVersion());
+        task.getSeverity().convention(extension.getSeverity());
+        task.getShellcheckBinary().convention(extension.getShellcheckBinary());
+        task.getInstaller().convention(extension.getInstaller());
+        task.getShellcheckArchive().convention(extension.getShellcheckArchive());
+        task.getShellcheckArchiveSha256().convention(extension.getShellcheckArchiveSha256());
+        final File gradleUserHome = project.getGradle().getGradleUserHomeDir();
+        task.getProvisioningDir().convention(project.getLayout().dir(project.getProviders().provider(() -> new File(gradleUserHome, "shellcheck"))));
+        task.getWorkingDir().convention(extension.getWorkingDir());
+        task.getAdditionalArguments().convention(extension.getAdditionalArguments());
+        task.getMaxParallelShards().convention(extension.getMaxParallelShards());
+        task.getMaxFilesPerInvocation().convention(extension.getMaxFilesPerInvocation());
+        task.getInvocationTimeout().convention(extension.getInvocationTimeout());
+        task.getTaskTimeout().convention(extension.getTaskTimeout());
+        task.getMaxErrors().convention(extension.getMaxErrors());
+        task.getMaxWarnings().convention(extension.getMaxWarnings());
+        task.getFailFast().convention(extension.getFailFast());
+        task.getChangedSince().convention(extension.getChangedSince());
+        task.getChangedLinesOnly().convention(extension.getChangedLinesOnly());
+        task.getSharedStore().convention(extension.getSharedStore());
+        task.getSharedStorePush().convention(extension.getSharedStorePush());
+        task.getGitChanges().convention(project.getProviders().of(ShellcheckGitChanges.Source.class, spec -> {
+            spec.getParameters().getChangedSince().set(task.getChangedSince());
+            spec.getParameters().getChangedLinesOnly().set(task.getChangedLinesOnly());
+            spec.getParameters().getWorkingDir().set(task.getWorkingDir());
+        }));
     }
 
-    private void configureReportsConventionMapping(Shellcheck task, Project project) {
+    private void configureReportsConventions(Shellcheck task, Project project) {
         ProjectLayout layout = project.getLayout();
         ProviderFactory providers = project.getProviders();
-        Provider<Directory> reportsDir = layout.dir(providers.provider(() -> extension.getReportsDir()));
+        Provider<Directory> baseReportsDir = layout.dir(providers.provider(() -> extension.getReportsDir()))
+                .orElse(project.getExtensions().getByType(ReportingExtension.class).getBaseDirectory().dir("shellcheck"));
+        // Watch reports of their own keep the outputs of shellcheck from overlapping with them
+        Provider<Directory> reportsDir = task instanceof ShellcheckWatch ? baseReportsDir.map(dir -> dir.dir("watch")) : baseReportsDir;
         task.getReports().getAll()
                 .forEach(report -> {
                     report.getRequired().convention(true);
                     String reportFileName = "shellcheck." + report.getName();
                     report.getOutputLocation().convention(reportsDir.map(dir -> dir.file(reportFileName)));
                 });
-    }
-
-    protected static ConventionMapping conventionMappingOf(Object object) {
-        return ((IConventionAware) object).getConventionMapping();
+        task.getReports().getHtml().getPagesLocation().convention(reportsDir.map(dir -> dir.dir("shellcheck")));
+        ShellcheckMetricsReport metrics = task.getReports().getMetrics();
+        metrics.getRequired().convention(false);
+        metrics.getOutputLocation().convention(reportsDir.map(dir -> dir.file("shellcheck-metrics.json")));
+        metrics.getOpenMetricsLocation().convention(reportsDir.map(dir -> dir.file("shellcheck-metrics.txt")));
     }
 }
@@ -0,0 +1,137 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds out once per build what the shellcheck binary or Docker image used by the tasks is able to do, so that every
+ * task shares the outcome instead of discovering it on its own.
+ * <p>
+ * Shellcheck is probed through {@code --version} and {@code --help}, which fails fast with a clear message when it is
+ * not available, before any script is checked.
+ */
+public abstract class ShellcheckProbes implements BuildService<BuildServiceParameters.None> {
+
+    private static final Logger LOGGER = Logging.getLogger(ShellcheckProbes.class);
+    private static final Pattern VERSION = Pattern.compile("version:\\s*(\\S+)");
+    private static final Pattern FORMATS = Pattern.compile("--format=\\S+.*\\(([^)]*)\\)");
+    private static final Pattern FLAG = Pattern.compile("--[a-z0-9][a-z0-9-]*");
+
+    private final Map<String, Capabilities> probed = new HashMap<>();
+
+    /**
+     * The capabilities of the shellcheck run through the given command prefix, e.g. {@code docker run}, probing it
+     * the first time it is asked for during the build.
+     *
+     * @param identity identifies the binary or image, so that every one of them is only probed once
+     */
+    public synchronized Capabilities probe(String identity, List<String> prefix, String binary, File workingDir) throws IOException, InterruptedException {
+        Capabilities capabilities = probed.get(identity);
+        if (capabilities == null) {
+            capabilities = doProbe(prefix, binary, workingDir);
+            LOGGER.info("Probed Shellcheck {}: version {}, formats {}", identity, capabilities.version, capabilities.formats);
+            probed.put(identity, capabilities);
+        }
+        return capabilities;
+    }
+
+    private static Capabilities doProbe(List<String> prefix, String binary, File workingDir) throws IOException, InterruptedException {
+        final String version;
+        final String help;
+        try {
+            version = Shell.run(command(prefix, binary, "--version"), workingDir, LOGGER);
+            help = Shell.run(command(prefix, binary, "--help"), workingDir, LOGGER);
+        } catch (IOException e) {
+            throw new GradleException(String.format("Shellcheck binary %s not found or not executable", binary), e);
+        }
+        final Matcher versionMatcher = VERSION.matcher(version);
+        if (!versionMatcher.find()) {
+            throw new GradleException(String.format("Error while probing shellcheck: unexpected output of %s --version: %s", binary, version));
+        }
+        final Set<String> formats = new LinkedHashSet<>();
+        final Matcher formatsMatcher = FORMATS.matcher(help);
+        if (formatsMatcher.find()) {
+            for (String format : formatsMatcher.group(1).split(",")) {
+                formats.add(format.trim());
+            }
+        }
+        final Set<String> flags = new LinkedHashSet<>();
+        final Matcher flagMatcher = FLAG.matcher(help);
+        while (flagMatcher.find()) {
+            flags.add(flagMatcher.group());
+        }
+        return new Capabilities(versionMatcher.group(1), formats, flags);
+    }
+
+    private static List<String> command(List<String> prefix, String binary, String option) {
+        final List<String> command = new ArrayList<>(prefix);
+        command.add(binary);
+        command.add(option);
+        return command;
+    }
+
+    /**
+     * What a shellcheck binary is able to do.
+     */
+    public static class Capabilities {
+        private final String version;
+        private final Set<String> formats;
+        private final Set<String> flags;
+
+        Capabilities(String version, Set<String> formats, Set<String> flags) {
+            this.version = version;
+            this.formats = Collections.unmodifiableSet(formats);
+            this.flags = Collections.unmodifiableSet(flags);
+        }
+
+        /**
+         * The version reported by {@code shellcheck --version}.
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * The output formats listed by {@code shellcheck --help}, empty if they could not be found.
+         */
+        public Set<String> getFormats() {
+            return formats;
+        }
+
+        /**
+         * The long options listed by {@code shellcheck --help}, e.g. {@code --external-sources}.
+         */
+        public Set<String> getFlags() {
+            return flags;
+        }
+
+        /**
+         * The fastest output format to stream violations from: {@code json1}, or {@code json} for versions older than
+         * 0.7.0 lacking it.
+         */
+        String getOutputFormat() {
+            if (formats.isEmpty() || formats.contains("json1")) {
+                return "json1";
+            }
+            if (formats.contains("json")) {
+                return "json";
+            }
+            throw new GradleException(String.format("Shellcheck %s supports neither the json1 nor the json output format", version));
+        }
+    }
+}
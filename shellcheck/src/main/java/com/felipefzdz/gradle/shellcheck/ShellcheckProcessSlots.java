@@ -0,0 +1,48 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the amount of shellcheck processes, or Docker invocations, running at the same time across every Shellcheck
+ * task of the build, so that a parallel build with many projects does not oversubscribe the machine or the Docker
+ * daemon.
+ * <p>
+ * Every shellcheck process takes a slot before being started and gives it back once it is done.
+ */
+public abstract class ShellcheckProcessSlots implements BuildService<ShellcheckProcessSlots.Parameters> {
+
+    /**
+     * The gradle property setting the amount of slots, e.g. {@code shellcheck.maxProcesses=4} in {@code gradle.properties}.
+     */
+    public static final String MAX_PROCESSES_PROPERTY = "shellcheck.maxProcesses";
+
+    public interface Parameters extends BuildServiceParameters {
+        Property<Integer> getMaxProcesses();
+    }
+
+    /**
+     * A slot taken by a process, given back when closed.
+     */
+    interface Slot extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Semaphore slots;
+
+    public ShellcheckProcessSlots() {
+        this.slots = new Semaphore(Math.max(1, getParameters().getMaxProcesses().get()), true);
+    }
+
+    /**
+     * Waits until a slot is free, in the order slots were asked for.
+     */
+    Slot acquire() throws InterruptedException {
+        slots.acquire();
+        return slots::release;
+    }
+}
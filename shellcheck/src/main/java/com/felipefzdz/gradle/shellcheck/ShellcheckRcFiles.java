@@ -0,0 +1,97 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds the shellcheckrc file applying to every script, as shellcheck does: the one given with {@code --rcfile}, none
+ * with {@code --norc}, or else the {@code .shellcheckrc} in the folder of the script or the closest of its parents,
+ * falling back to the one in the user home. The latter is left out when shellcheck runs through Docker, as it does not
+ * see the user home then.
+ */
+class ShellcheckRcFiles {
+
+    private static final String RCFILE = ".shellcheckrc";
+
+    private final File rcfile;
+    private final boolean search;
+    private final File userRcfile;
+    private final Map<File, Optional<File>> closest = new HashMap<>();
+
+    private ShellcheckRcFiles(File rcfile, boolean search, File userRcfile) {
+        this.rcfile = rcfile;
+        this.search = search;
+        this.userRcfile = userRcfile;
+    }
+
+    static ShellcheckRcFiles of(Shellcheck task) {
+        final File workingDir = task.getWorkingDir().get().getAsFile();
+        final List<String> arguments = ShellcheckArguments.tokenize(task.getAdditionalArguments().get());
+        for (int i = 0; i < arguments.size(); i++) {
+            if (arguments.get(i).equals("--norc")) {
+                return new ShellcheckRcFiles(null, false, null);
+            }
+            if (arguments.get(i).equals("--rcfile") && i + 1 < arguments.size()) {
+                return new ShellcheckRcFiles(resolve(workingDir, arguments.get(i + 1)), false, null);
+            }
+            if (arguments.get(i).startsWith("--rcfile=")) {
+                return new ShellcheckRcFiles(resolve(workingDir, arguments.get(i).substring("--rcfile=".length())), false, null);
+            }
+        }
+        return new ShellcheckRcFiles(null, true, task.getUseDocker().get() ? null : userRcfile());
+    }
+
+    private static File resolve(File workingDir, String path) {
+        final File file = new File(path);
+        return file.isAbsolute() ? file : new File(workingDir, path);
+    }
+
+    private static File userRcfile() {
+        final String home = System.getProperty("user.home");
+        final String xdgConfigHome = System.getenv("XDG_CONFIG_HOME");
+        final File xdgRcfile = xdgConfigHome == null || xdgConfigHome.isEmpty() ?
+                new File(home, ".config/shellcheckrc") : new File(xdgConfigHome, "shellcheckrc");
+        return xdgRcfile.isFile() ? xdgRcfile : new File(home, RCFILE);
+    }
+
+    /**
+     * The shellcheckrc file applying to the given script, if any.
+     */
+    File rcfileOf(File script) {
+        if (!search) {
+            return rcfile != null && rcfile.isFile() ? rcfile : null;
+        }
+        final File found = closestTo(script.getAbsoluteFile().getParentFile());
+        return found != null ? found : userRcfile != null && userRcfile.isFile() ? userRcfile : null;
+    }
+
+    private File closestTo(File dir) {
+        if (dir == null) {
+            return null;
+        }
+        final Optional<File> known = closest.get(dir);
+        if (known != null) {
+            return known.orElse(null);
+        }
+        final File candidate = new File(dir, RCFILE);
+        final File found = candidate.isFile() ? candidate : closestTo(dir.getParentFile());
+        closest.put(dir, Optional.ofNullable(found));
+        return found;
+    }
+
+    /**
+     * The shellcheckrc files applying to any of the given scripts, sorted by path.
+     */
+    Set<File> rcfilesOf(Collection<File> scripts) {
+        final Set<File> rcfiles = new TreeSet<>();
+        scripts.stream().map(this::rcfileOf).filter(Objects::nonNull).forEach(rcfiles::add);
+        return rcfiles;
+    }
+}
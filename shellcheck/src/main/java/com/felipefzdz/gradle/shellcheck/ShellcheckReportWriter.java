@@ -0,0 +1,297 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.logging.Logger;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Writes the violations of every file, one file at a time, into the formats shellcheck itself would have produced, so
+ * that none of them requires an additional shellcheck run.
+ * <p>
+ * The checkstyle XML, the tty text and the HTML pages are written to disk as files are handed over, and the summary of
+ * the analysis is gathered along the way, so memory does not grow with the amount of violations. Files expected through
+ * {@link #orderBy(Collection)} are written in the order of their paths instead, whatever the order they are handed over
+ * in, so that the same files always give the same reports: only the files handed over ahead of their turn are held.
+ */
+class ShellcheckReportWriter implements Closeable {
+
+    private static final String WIKI_URL = "https://www.shellcheck.net/wiki/";
+    private static final int WIKI_MESSAGE_LENGTH = 60;
+
+    private final File workingDir;
+    private final OutputStream xmlOut;
+    private final XMLStreamWriter xml;
+    private final Writer tty;
+    private final Logger console;
+    private final ShellcheckHtmlWriter html;
+    private final ShellcheckMetrics metrics;
+    private final Map<Integer, String> rules = new TreeMap<>();
+    private final Set<String> severities = new TreeSet<>();
+    private final Set<String> filesWithViolations = new HashSet<>();
+    private final NavigableSet<String> order = new TreeSet<>();
+    private final Map<String, List<ShellcheckViolation>> held = new TreeMap<>();
+    private int errors;
+    private int warnings;
+    private boolean ttyStarted;
+
+    /**
+     * @param xmlDestination where to write the checkstyle XML, using the same layout as {@code shellcheck -f checkstyle},
+     *                       or null to skip it
+     * @param ttyDestination where to write the text using the same layout as {@code shellcheck -f tty}, without colours,
+     *                       or null to skip it
+     * @param console        where to show the same text as {@code ttyDestination}, or null to skip it
+     * @param html           where to write the HTML report, or null to skip it
+     * @param workingDir     the folder file names are relative to, used to show the offending source lines
+     * @param metrics        where to add the time spent writing every format
+     */
+    ShellcheckReportWriter(File xmlDestination, File ttyDestination, Logger console, ShellcheckHtmlWriter html, File workingDir,
+                           ShellcheckMetrics metrics) throws IOException, XMLStreamException {
+        this.workingDir = workingDir;
+        this.metrics = metrics;
+        this.console = console;
+        this.html = html;
+        if (xmlDestination != null) {
+            Files.createDirectories(xmlDestination.getAbsoluteFile().getParentFile().toPath());
+            this.xmlOut = new BufferedOutputStream(Files.newOutputStream(xmlDestination.toPath()));
+            this.xml = XMLOutputFactory.newInstance().createXMLStreamWriter(xmlOut, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement("checkstyle");
+            xml.writeAttribute("version", "4.3");
+        } else {
+            this.xmlOut = null;
+            this.xml = null;
+        }
+        if (ttyDestination != null) {
+            Files.createDirectories(ttyDestination.getAbsoluteFile().getParentFile().toPath());
+            this.tty = Files.newBufferedWriter(ttyDestination.toPath(), StandardCharsets.UTF_8);
+        } else {
+            this.tty = null;
+        }
+    }
+
+    /**
+     * Holds the given files back until every one of them with a lower path has been handed over, the files with no
+     * violations included.
+     */
+    void orderBy(Collection<String> files) {
+        order.addAll(files);
+    }
+
+    /**
+     * Hands over the violations of a file, which count towards the summary straight away, even when the file is held
+     * until its turn to be written.
+     */
+    void write(String file, List<ShellcheckViolation> violations) throws IOException, XMLStreamException {
+        for (ShellcheckViolation violation : violations) {
+            severities.add(violation.getLevel());
+            if ("error".equals(violation.getLevel())) {
+                errors++;
+            } else {
+                warnings++;
+            }
+        }
+        if (!violations.isEmpty()) {
+            filesWithViolations.add(file);
+        }
+        if (!order.contains(file)) {
+            writeFile(file, violations);
+            return;
+        }
+        held.put(file, violations);
+        while (!order.isEmpty() && held.containsKey(order.first())) {
+            final String next = order.pollFirst();
+            writeFile(next, held.remove(next));
+        }
+    }
+
+    private void writeFile(String file, List<ShellcheckViolation> violations) throws IOException, XMLStreamException {
+        if (violations.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        writeCheckstyle(file, violations);
+        metrics.phase("xml", start);
+        if (tty != null || console != null) {
+            start = System.nanoTime();
+            writeTty(renderTty(file, violations));
+            metrics.phase("txt", start);
+        }
+        if (html != null) {
+            start = System.nanoTime();
+            html.write(file, violations);
+            metrics.phase("html", start);
+        }
+    }
+
+    int getFilesWithViolations() {
+        return filesWithViolations.size();
+    }
+
+    /**
+     * The amount of violations with error severity written so far.
+     */
+    int getErrors() {
+        return errors;
+    }
+
+    /**
+     * The amount of violations with warning, info or style severity written so far.
+     */
+    int getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * The distinct severities found across all the violations written so far.
+     */
+    Set<String> getSeverities() {
+        return Collections.unmodifiableSet(severities);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // Files never handed over, e.g. once a threshold cancelled the analysis, no longer hold back the rest
+            for (Map.Entry<String, List<ShellcheckViolation>> entry : held.entrySet()) {
+                writeFile(entry.getKey(), entry.getValue());
+            }
+            held.clear();
+            if (!rules.isEmpty()) {
+                final StringBuilder footer = new StringBuilder("For more information:\n");
+                rules.forEach((code, message) -> footer.append("  ").append(WIKI_URL).append("SC").append(code)
+                        .append(" -- ").append(abbreviate(message)).append("\n"));
+                writeTty(footer.toString());
+            }
+            if (xml != null) {
+                xml.writeEndElement();
+                xml.writeEndDocument();
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write the checkstyle report", e);
+        } finally {
+            if (xmlOut != null) {
+                xmlOut.close();
+            }
+            if (tty != null) {
+                tty.close();
+            }
+            if (html != null) {
+                final long start = System.nanoTime();
+                html.close();
+                metrics.phase("html", start);
+            }
+        }
+    }
+
+    private void writeCheckstyle(String file, List<ShellcheckViolation> violations) throws XMLStreamException {
+        if (xml == null) {
+            return;
+        }
+        xml.writeStartElement("file");
+        xml.writeAttribute("name", file);
+        for (ShellcheckViolation violation : violations) {
+            xml.writeEmptyElement("error");
+            xml.writeAttribute("line", String.valueOf(violation.getLine()));
+            xml.writeAttribute("column", String.valueOf(violation.getColumn()));
+            xml.writeAttribute("severity", violation.getLevel());
+            xml.writeAttribute("message", violation.getMessage());
+            xml.writeAttribute("source", "ShellCheck." + violation.getRule());
+        }
+        xml.writeEndElement();
+    }
+
+    /**
+     * Separates every block with an empty line, as shellcheck does, and trims the whole text.
+     */
+    private void writeTty(String block) throws IOException {
+        final String text = (ttyStarted ? "\n" : "") + block.trim();
+        ttyStarted = true;
+        if (tty != null) {
+            tty.write(text);
+            tty.write("\n");
+        }
+        if (console != null) {
+            console.lifecycle(text);
+        }
+    }
+
+    private String renderTty(String file, List<ShellcheckViolation> violations) {
+        final StringBuilder block = new StringBuilder();
+        final List<String> sourceLines = readLines(workingDir.toPath().resolve(file));
+        int currentLine = -1;
+        for (ShellcheckViolation violation : violations) {
+            String sourceLine = violation.getLine() > 0 && violation.getLine() <= sourceLines.size() ? sourceLines.get(violation.getLine() - 1) : "";
+            if (violation.getLine() != currentLine) {
+                currentLine = violation.getLine();
+                block.append("\nIn ").append(file).append(" line ").append(currentLine).append(":\n");
+                block.append(sourceLine).append("\n");
+            }
+            block.append(indentation(sourceLine, violation.getColumn()))
+                    .append(marker(violation))
+                    .append(violation.getRule()).append(" (").append(violation.getLevel()).append("): ")
+                    .append(violation.getMessage()).append("\n");
+            rules.putIfAbsent(violation.getCode(), violation.getMessage());
+        }
+        return block.toString();
+    }
+
+    private static String indentation(String sourceLine, int column) {
+        StringBuilder indentation = new StringBuilder();
+        for (int i = 0; i < column - 1; i++) {
+            indentation.append(i < sourceLine.length() && sourceLine.charAt(i) == '\t' ? '\t' : ' ');
+        }
+        return indentation.toString();
+    }
+
+    private static String marker(ShellcheckViolation violation) {
+        int length = violation.getEndLine() == violation.getLine() ? violation.getEndColumn() - violation.getColumn() : 0;
+        if (length <= 2) {
+            return "^-- ";
+        }
+        StringBuilder marker = new StringBuilder("^");
+        for (int i = 0; i < length - 2; i++) {
+            marker.append('-');
+        }
+        return marker.append("^ ").toString();
+    }
+
+    private static String abbreviate(String message) {
+        return message.length() <= WIKI_MESSAGE_LENGTH ? message : message.substring(0, WIKI_MESSAGE_LENGTH - 3) + "...";
+    }
+
+    private static List<String> readLines(Path file) {
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (MalformedInputException e) {
+            try {
+                return Files.readAllLines(file, StandardCharsets.ISO_8859_1);
+            } catch (IOException ignored) {
+                return Collections.emptyList();
+            }
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+}
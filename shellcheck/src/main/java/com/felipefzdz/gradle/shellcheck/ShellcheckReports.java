@@ -13,7 +13,8 @@ public interface ShellcheckReports {
      * <p>
      * This report IS enabled by default.
      * <p>
-     * Enabling this report will also cause the XML report to be generated, as the HTML is derived from the XML.
+     * Enabling this report with a custom stylesheet will also cause the XML report to be generated, as the HTML is then
+     * derived from the XML.
      *
      * @return The shellcheck HTML report
      */
@@ -39,6 +40,17 @@ public interface ShellcheckReports {
     @Internal
     ShellcheckReport getTxt();
 
+    /**
+     * The shellcheck metrics report, in JSON and in the OpenMetrics text format, with the time spent in every phase of
+     * the task and by every file.
+     * <p>
+     * This report IS NOT enabled by default.
+     *
+     * @return The shellcheck metrics report
+     */
+    @Internal
+    ShellcheckMetricsReport getMetrics();
+
     @Internal
     Collection<ShellcheckReport> getAll();
 }
@@ -14,12 +14,14 @@ public class ShellcheckReportsImpl implements ShellcheckReports {
     private final ShellcheckHtmlReport htmlReport;
     private final ShellcheckReport xmlReport;
     private final ShellcheckReport txtReport;
+    private final ShellcheckMetricsReport metricsReport;
 
     @Inject
     public ShellcheckReportsImpl(ObjectFactory objects) {
         this.htmlReport = objects.newInstance(DefaultShellcheckHtmlReport.class, "html");
         this.xmlReport = objects.newInstance(DefaultShellcheckReport.class, "xml");
         this.txtReport = objects.newInstance(DefaultShellcheckReport.class, "txt");
+        this.metricsReport = objects.newInstance(DefaultShellcheckMetricsReport.class, "metrics");
     }
 
     @Override
@@ -37,18 +39,24 @@ public class ShellcheckReportsImpl implements ShellcheckReports {
         return txtReport;
     }
 
+    @Override
+    public ShellcheckMetricsReport getMetrics() {
+        return metricsReport;
+    }
+
     @Override
     public Collection<ShellcheckReport> getAll() {
         List<ShellcheckReport> shellcheckReports = new java.util.ArrayList<>();
         shellcheckReports.add(htmlReport);
         shellcheckReports.add(xmlReport);
         shellcheckReports.add(txtReport);
+        shellcheckReports.add(metricsReport);
         return shellcheckReports;
     }
 
     @Nested
     public Collection<ShellcheckReport> getEnabledReports() {
-        return Stream.of(htmlReport, xmlReport, txtReport)
+        return Stream.of(htmlReport, xmlReport, txtReport, metricsReport)
                 .filter(it -> it.getRequired().get())
                 .collect(Collectors.toList());
     }
@@ -0,0 +1,94 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Remembers the results of every script analysed during the build, so that Shellcheck tasks checking the same scripts,
+ * e.g. an {@code error} gate and a {@code style} report over overlapping folders, analyse each of them only once.
+ * <p>
+ * Results are keyed like the result store of every task, whose keys leave the severity out: scripts are always analysed
+ * at the lowest severity, and every task filters the violations it reports. A task claims the keys it is about to
+ * analyse, and only waits for the keys claimed by other tasks once it is done with its own, so that tasks never wait
+ * on each other. Keys left without a result, e.g. by a cancelled task, are released for the waiting tasks to analyse.
+ */
+public abstract class ShellcheckResultMemo implements BuildService<BuildServiceParameters.None> {
+
+    private final Map<String, CompletableFuture<byte[]>> results = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the given keys not claimed yet by another task.
+     */
+    Claim claim(Collection<String> keys) {
+        final Claim claim = new Claim();
+        for (String key : keys) {
+            final CompletableFuture<byte[]> result = new CompletableFuture<>();
+            final CompletableFuture<byte[]> existing = results.putIfAbsent(key, result);
+            if (existing == null) {
+                claim.owned.put(key, result);
+            } else {
+                claim.others.put(key, existing);
+            }
+        }
+        return claim;
+    }
+
+    /**
+     * The keys claimed by a task, along with the ones it needs from other tasks. Closing it releases the claimed keys
+     * which were not published.
+     */
+    class Claim implements AutoCloseable {
+        private final Map<String, CompletableFuture<byte[]>> owned = new LinkedHashMap<>();
+        private final Map<String, CompletableFuture<byte[]>> others = new LinkedHashMap<>();
+
+        Set<String> getOwned() {
+            return owned.keySet();
+        }
+
+        Set<String> getOthers() {
+            return others.keySet();
+        }
+
+        /**
+         * The result of a key claimed by another task, if it is already known.
+         */
+        byte[] analysed(String key) {
+            return others.get(key).getNow(null);
+        }
+
+        /**
+         * Waits for the result of a key claimed by another task, which is null when that task did not get to it.
+         */
+        byte[] await(String key) throws InterruptedException {
+            try {
+                return others.get(key).get();
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+
+        void publish(String key, byte[] result) {
+            final CompletableFuture<byte[]> future = owned.remove(key);
+            if (future != null) {
+                future.complete(result);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Map.Entry<String, CompletableFuture<byte[]>> entry : owned.entrySet()) {
+                results.remove(entry.getKey(), entry.getValue());
+                entry.getValue().complete(null);
+            }
+            owned.clear();
+        }
+    }
+}
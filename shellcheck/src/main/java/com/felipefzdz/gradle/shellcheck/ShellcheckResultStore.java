@@ -0,0 +1,306 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Persistent per-file store of shellcheck results.
+ * <p>
+ * Entries are addressed by a key combining the content of the script, of the files it sources and of its shellcheckrc
+ * file with everything else that can change what shellcheck reports for it (version and additional arguments), so
+ * that only scripts whose key has no entry yet need to go through shellcheck. Scripts are analysed at the lowest
+ * severity, which leaves the severity out of the key. Paths are relative to the working directory, so that keys are the
+ * same wherever the scripts are checked out, and entries can be shared through a {@link ShellcheckSharedStore} and a
+ * {@link ShellcheckResultMemo}. An index remembers the key of every script checked by the last execution, which
+ * allows skipping the hashing of scripts Gradle reports as unchanged.
+ */
+class ShellcheckResultStore {
+
+    private static final String INDEX_FILE = "index.properties";
+    private static final String FINGERPRINT_PROPERTY = "#fingerprint";
+
+    private final File storeDir;
+    private final File entriesDir;
+    private final String fingerprint;
+    private final Path workingDir;
+    private final ShellcheckRcFiles rcFiles;
+    private final Properties index = new Properties();
+    private final Map<File, byte[]> digests = new HashMap<>();
+
+    private ShellcheckResultStore(File storeDir, String fingerprint, File workingDir, ShellcheckRcFiles rcFiles) {
+        this.storeDir = storeDir;
+        this.entriesDir = new File(storeDir, "entries");
+        this.fingerprint = fingerprint;
+        this.workingDir = workingDir.toPath();
+        this.rcFiles = rcFiles;
+    }
+
+    static ShellcheckResultStore open(File storeDir, Shellcheck task, String version) throws IOException {
+        final String fingerprint = fingerprintOf(task, version);
+        final ShellcheckResultStore store = new ShellcheckResultStore(storeDir, fingerprint,
+                task.getWorkingDir().get().getAsFile().getCanonicalFile(), ShellcheckRcFiles.of(task));
+        final File indexFile = new File(storeDir, INDEX_FILE);
+        if (indexFile.isFile()) {
+            try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+                store.index.load(in);
+            }
+            if (!fingerprint.equals(store.index.getProperty(FINGERPRINT_PROPERTY))) {
+                store.index.clear();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Everything, besides the script and the files it reads, that shellcheck results depend on. The version is the one
+     * reported by shellcheck itself, so that the same version gives the same results through Docker or a local binary.
+     */
+    private static String fingerprintOf(Shellcheck task, String version) {
+        return String.join("\n", version, task.getAdditionalArguments().get());
+    }
+
+    /**
+     * Identifies the shellcheck binary or Docker image used by the task, changing whenever the binary does.
+     */
+    static String binaryIdentity(Shellcheck task) {
+        if (task.getUseDocker().get()) {
+            return "docker:koalaman/shellcheck-alpine:" + task.getShellcheckVersion().get();
+        }
+        final String shellcheckBinary = ShellcheckInstaller.binaryOf(task);
+        return resolveExecutable(shellcheckBinary)
+                .map(binary -> binary.getAbsolutePath() + ":" + binary.length() + ":" + binary.lastModified())
+                .orElse(shellcheckBinary);
+    }
+
+    private static Optional<File> resolveExecutable(String executable) {
+        final File candidate = new File(executable);
+        if (candidate.isAbsolute() || executable.contains(File.separator)) {
+            return candidate.isFile() ? Optional.of(candidate) : Optional.empty();
+        }
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return Optional.empty();
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            final File inPath = new File(dir, executable);
+            if (inPath.isFile() && inPath.canExecute()) {
+                return Optional.of(inPath);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The key of the given script as recorded by the last execution, if any.
+     */
+    String indexedKey(File script) {
+        return index.getProperty(script.getPath());
+    }
+
+    /**
+     * The key of the given script, according to its path and content, the content of its shellcheckrc file and the
+     * content of the files it sources.
+     */
+    String keyOf(File script, Collection<File> dependencies) throws IOException {
+        final MessageDigest digest = sha256();
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        // The extension of the script can decide its shell dialect
+        update(digest, relativePath(script));
+        final File rcfile = rcFiles.rcfileOf(script);
+        digest.update((byte) 0);
+        digest.update(rcfile == null ? new byte[0] : digests.computeIfAbsent(rcfile, ShellcheckResultStore::digestOf));
+        digest.update((byte) 0);
+        update(digest, script);
+        for (File dependency : dependencies) {
+            update(digest, relativePath(dependency));
+            digest.update((byte) 0);
+            digest.update(digests.computeIfAbsent(dependency, ShellcheckResultStore::digestOf));
+        }
+        return toHex(digest.digest());
+    }
+
+    private String relativePath(File file) {
+        final Path path = file.toPath();
+        return (path.startsWith(workingDir) ? workingDir.relativize(path) : path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((byte) 0);
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The SHA-256 of the given file, or nothing if it does not exist.
+     */
+    static byte[] digestOf(File file) {
+        if (!file.isFile()) {
+            return new byte[0];
+        }
+        final MessageDigest digest = sha256();
+        try {
+            update(digest, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, File file) throws IOException {
+        final byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    boolean contains(String key) {
+        return key != null && entryFile(key).isFile();
+    }
+
+    @SuppressWarnings("unchecked")
+    List<ShellcheckViolation> load(String key, String script) throws IOException {
+        final List<ShellcheckViolation> violations = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(entryFile(key).toPath(), StandardCharsets.UTF_8)) {
+            for (Map<String, Object> comment : (List<Map<String, Object>>) new JsonSlurper().parse(reader)) {
+                violations.add(new ShellcheckViolation(script,
+                        ((Number) comment.get("line")).intValue(),
+                        ((Number) comment.get("endLine")).intValue(),
+                        ((Number) comment.get("column")).intValue(),
+                        ((Number) comment.get("endColumn")).intValue(),
+                        (String) comment.get("level"),
+                        ((Number) comment.get("code")).intValue(),
+                        (String) comment.get("message")));
+            }
+        }
+        return violations;
+    }
+
+    void store(String key, Collection<ShellcheckViolation> violations) throws IOException {
+        final List<Map<String, Object>> comments = new ArrayList<>();
+        for (ShellcheckViolation violation : violations) {
+            final Map<String, Object> comment = new LinkedHashMap<>();
+            comment.put("line", violation.getLine());
+            comment.put("endLine", violation.getEndLine());
+            comment.put("column", violation.getColumn());
+            comment.put("endColumn", violation.getEndColumn());
+            comment.put("level", violation.getLevel());
+            comment.put("code", violation.getCode());
+            comment.put("message", violation.getMessage());
+            comments.add(comment);
+        }
+        write(key, JsonOutput.toJson(comments).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The entry stored under the given key, as it is kept on disk.
+     */
+    byte[] read(String key) throws IOException {
+        return Files.readAllBytes(entryFile(key).toPath());
+    }
+
+    /**
+     * Stores an entry read from another store, unless it is not a valid one.
+     *
+     * @return whether the entry was stored
+     */
+    boolean put(String key, byte[] entry) throws IOException {
+        try {
+            if (!(new JsonSlurper().parse(entry, StandardCharsets.UTF_8.name()) instanceof List)) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            return false;
+        }
+        write(key, entry);
+        return true;
+    }
+
+    private void write(String key, byte[] entry) throws IOException {
+        final File file = entryFile(key);
+        Files.createDirectories(file.getParentFile().toPath());
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(tmp.toPath(), entry);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    void index(File script, String key) {
+        index.setProperty(script.getPath(), key);
+    }
+
+    /**
+     * Persists the index, keeping only the given scripts, and removes the entries no longer referenced by it.
+     */
+    void save(Collection<File> scripts) throws IOException {
+        final Properties retained = new Properties();
+        for (File script : scripts) {
+            final String key = index.getProperty(script.getPath());
+            if (key != null) {
+                retained.setProperty(script.getPath(), key);
+            }
+        }
+        final Set<Object> referenced = new HashSet<>(retained.values());
+        retained.setProperty(FINGERPRINT_PROPERTY, fingerprint);
+        Files.createDirectories(storeDir.toPath());
+        try (OutputStream out = Files.newOutputStream(new File(storeDir, INDEX_FILE).toPath())) {
+            retained.store(out, "Shellcheck result store index");
+        }
+        final File[] buckets = entriesDir.listFiles();
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                final File[] entries = bucket.listFiles();
+                if (entries != null) {
+                    for (File entry : entries) {
+                        if (!referenced.contains(entry.getName().replace(".json", ""))) {
+                            Files.deleteIfExists(entry.toPath());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(new File(entriesDir, key.substring(0, 2)), key + ".json");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
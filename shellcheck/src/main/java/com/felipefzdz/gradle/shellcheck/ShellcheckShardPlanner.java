@@ -0,0 +1,58 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the scripts to check into shards of a similar cost, so that they all finish at about the same time.
+ */
+class ShellcheckShardPlanner {
+
+    /**
+     * Assigns the most expensive scripts first, each of them to the shard with the lowest accumulated cost so far.
+     *
+     * @param cost the estimated cost of a script, at least one
+     */
+    static List<List<File>> plan(List<File> scripts, int maxShards, ToLongFunction<File> cost) {
+        final int shardCount = Math.max(1, Math.min(maxShards, scripts.size()));
+        final PriorityQueue<Shard> shards = new PriorityQueue<>(Comparator.comparingLong((Shard shard) -> shard.cost).thenComparingInt(shard -> shard.index));
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard(i));
+        }
+        final Map<File, Long> costs = new HashMap<>();
+        for (File script : scripts) {
+            costs.put(script, cost.applyAsLong(script));
+        }
+        final List<File> byCost = scripts.stream()
+                .sorted(Comparator.comparingLong(costs::get).reversed())
+                .collect(Collectors.toList());
+        for (File script : byCost) {
+            final Shard cheapest = shards.poll();
+            cheapest.scripts.add(script);
+            cheapest.cost += costs.get(script);
+            shards.add(cheapest);
+        }
+        return shards.stream()
+                .sorted(Comparator.comparingInt(shard -> shard.index))
+                .map(shard -> shard.scripts)
+                .filter(shard -> !shard.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static class Shard {
+        private final int index;
+        private final List<File> scripts = new ArrayList<>();
+        private long cost;
+
+        private Shard(int index) {
+            this.index = index;
+        }
+    }
+}
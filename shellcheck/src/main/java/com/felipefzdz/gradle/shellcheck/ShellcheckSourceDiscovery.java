@@ -0,0 +1,229 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the shell scripts inside the {@code sources} folders of a {@link Shellcheck} task.
+ * <p>
+ * A file is a shell script when its name ends with one of the configured extensions or, for files without any
+ * extension, when its shebang points to a shell supported by shellcheck. Every folder is listed in parallel, and only
+ * the first bytes of extensionless files are read.
+ */
+class ShellcheckSourceDiscovery {
+
+    static final List<String> DEFAULT_EXTENSIONS = Arrays.asList("sh", "bash", "ksh", "bashrc", "bash_profile", "bash_login", "bash_logout");
+
+    private static final Set<String> SHELLS = new HashSet<>(Arrays.asList("sh", "bash", "dash", "ksh"));
+    private static final Set<String> IGNORED_DIRECTORIES = new HashSet<>(Arrays.asList(".git", ".svn", ".hg"));
+    private static final int SHEBANG_LENGTH = 128;
+
+    private final List<String> extensions;
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final List<Pattern> excludedDirectories;
+    private final boolean shebangDetection;
+
+    ShellcheckSourceDiscovery(List<String> extensions, List<String> includes, List<String> excludes, boolean shebangDetection) {
+        this.extensions = extensions.stream().map(extension -> extension.startsWith(".") ? extension : "." + extension).collect(Collectors.toList());
+        this.includes = includes.stream().map(ShellcheckSourceDiscovery::antPattern).collect(Collectors.toList());
+        this.excludes = excludes.stream().map(ShellcheckSourceDiscovery::antPattern).collect(Collectors.toList());
+        this.excludedDirectories = excludes.stream()
+                .filter(exclude -> exclude.endsWith("/**"))
+                .map(exclude -> antPattern(exclude.substring(0, exclude.length() - 3)))
+                .collect(Collectors.toList());
+        this.shebangDetection = shebangDetection;
+    }
+
+    static ShellcheckSourceDiscovery of(Shellcheck task) {
+        return new ShellcheckSourceDiscovery(task.getScriptExtensions().get(), task.getIncludes().get(), task.getExcludes().get(), task.getShebangDetection().get());
+    }
+
+    /**
+     * The shell scripts found in the given files and folders, sorted by path.
+     */
+    List<File> discover(Collection<File> roots) {
+        final Queue<File> scripts = new ConcurrentLinkedQueue<>();
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            final List<RecursiveAction> walks = new ArrayList<>();
+            for (File root : roots) {
+                final Path rootPath = root.getAbsoluteFile().toPath();
+                if (Files.isDirectory(rootPath)) {
+                    walks.add(new DirectoryWalk(rootPath, rootPath, scripts));
+                } else if (Files.isRegularFile(rootPath) && isScript(rootPath.getFileName().toString(), rootPath)) {
+                    scripts.add(rootPath.toFile());
+                }
+            }
+            walks.forEach(pool::execute);
+            walks.forEach(RecursiveAction::join);
+        } finally {
+            pool.shutdown();
+        }
+        return scripts.stream().sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Whether the given file, inside the given root folder, would be found as a shell script, without walking the
+     * root folder.
+     */
+    boolean accepts(File root, File file) {
+        final Path rootPath = root.getAbsoluteFile().toPath();
+        final Path path = file.getAbsoluteFile().toPath();
+        if (!path.startsWith(rootPath) || path.equals(rootPath) || !Files.isRegularFile(path)) {
+            return false;
+        }
+        for (Path directory = path.getParent(); !directory.equals(rootPath); directory = directory.getParent()) {
+            if (IGNORED_DIRECTORIES.contains(directory.getFileName().toString()) || matchesAny(excludedDirectories, relativePath(rootPath, directory))) {
+                return false;
+            }
+        }
+        return isIncluded(relativePath(rootPath, path)) && isScript(path.getFileName().toString(), path);
+    }
+
+    /**
+     * Whether the given folder is never searched for shell scripts, e.g. a {@code .git} folder.
+     */
+    static boolean isIgnored(Path directory) {
+        return directory.getFileName() != null && IGNORED_DIRECTORIES.contains(directory.getFileName().toString());
+    }
+
+    private class DirectoryWalk extends RecursiveAction {
+        private final Path root;
+        private final Path directory;
+        private final Queue<File> scripts;
+
+        private DirectoryWalk(Path root, Path directory, Queue<File> scripts) {
+            this.root = root;
+            this.directory = directory;
+            this.scripts = scripts;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DirectoryWalk> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    final String relativePath = relativePath(root, entry);
+                    final BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        if (!IGNORED_DIRECTORIES.contains(entry.getFileName().toString()) && !matchesAny(excludedDirectories, relativePath)) {
+                            subdirectories.add(new DirectoryWalk(root, entry, scripts));
+                        }
+                    } else if ((attributes.isRegularFile() || attributes.isSymbolicLink() && Files.isRegularFile(entry))
+                            && isIncluded(relativePath) && isScript(entry.getFileName().toString(), entry)) {
+                        scripts.add(entry.toFile());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to list " + directory, e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    private boolean isIncluded(String relativePath) {
+        return (includes.isEmpty() || matchesAny(includes, relativePath)) && !matchesAny(excludes, relativePath);
+    }
+
+    private boolean isScript(String fileName, Path file) {
+        for (String extension : extensions) {
+            if (fileName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return shebangDetection && fileName.indexOf('.') < 0 && hasShellShebang(file);
+    }
+
+    /**
+     * Whether the first line of the file is a shebang to a shell, either directly ({@code #!/bin/bash}) or through
+     * env ({@code #!/usr/bin/env bash}).
+     */
+    static boolean hasShellShebang(Path file) {
+        final byte[] head = new byte[SHEBANG_LENGTH];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int chunk;
+            while (read < head.length && (chunk = in.read(head, read, head.length - read)) != -1) {
+                read += chunk;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (read < 2 || head[0] != '#' || head[1] != '!') {
+            return false;
+        }
+        final String firstLine = new String(head, 2, read - 2, StandardCharsets.ISO_8859_1).split("[\r\n]", 2)[0].trim();
+        final String[] words = firstLine.split("\\s+");
+        String interpreter = basename(words[0]);
+        if ("env".equals(interpreter)) {
+            interpreter = Arrays.stream(words).skip(1).filter(word -> !word.startsWith("-")).findFirst().map(ShellcheckSourceDiscovery::basename).orElse("");
+        }
+        return SHELLS.contains(interpreter);
+    }
+
+    private static String basename(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String relativePath) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(relativePath).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translates an Ant style pattern, as used by Gradle file trees, into a regular expression.
+     */
+    static Pattern antPattern(String antPattern) {
+        String pattern = antPattern.replace('\\', '/');
+        if (pattern.endsWith("/")) {
+            pattern = pattern + "**";
+        }
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (pattern.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (pattern.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
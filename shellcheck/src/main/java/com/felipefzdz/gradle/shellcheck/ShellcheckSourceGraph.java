@@ -0,0 +1,355 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The files sourced by every script, directly or through other sourced files, so that a change to a shared library
+ * rechecks exactly the scripts depending on it.
+ * <p>
+ * Sourced files are found through {@code source} and {@code .} commands and {@code # shellcheck source=} directives,
+ * and resolved against the working directory, the source paths given with {@code source-path} directives or
+ * {@code --source-path}, and the folder of the script. Every candidate found counts as a dependency: checking a script
+ * again for nothing is harmless, while missing one of its dependencies is not. Paths computed at runtime are matched by
+ * their last literal part, relative to the folder of the script, e.g. {@code lib/common.sh} for
+ * {@code "$(dirname "$0")/lib/common.sh"}.
+ * <p>
+ * The graph is persisted next to the result store, and a file is only parsed again once its size or modification time
+ * change.
+ */
+class ShellcheckSourceGraph {
+
+    private static final String GRAPH_FILE = "sources.properties";
+    private static final String SCRIPT_DIR = "SCRIPTDIR";
+    private static final Pattern SOURCE_COMMAND = Pattern.compile("(?:^|[;&|({!]|\\b(?:then|do|else|elif|time)\\b)\\s*(?:source|\\.)\\s+");
+    private static final Pattern DIRECTIVE = Pattern.compile("^#\\s*shellcheck\\s+(.*)$");
+    private static final Pattern DYNAMIC_PREFIX = Pattern.compile("^.*[$`)}][^/]*/");
+
+    private final Map<String, Node> nodes;
+
+    private ShellcheckSourceGraph(Map<String, Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    static ShellcheckSourceGraph load(File storeDir) throws IOException {
+        final Map<String, Node> nodes = new HashMap<>();
+        final File graphFile = new File(storeDir, GRAPH_FILE);
+        if (graphFile.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(graphFile.toPath())) {
+                properties.load(in);
+            }
+            for (String path : properties.stringPropertyNames()) {
+                final String[] fields = properties.getProperty(path).split("\0", -1);
+                if (fields.length >= 2) {
+                    nodes.put(path, new Node(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            new ArrayList<>(Arrays.asList(fields).subList(2, fields.length))));
+                }
+            }
+        }
+        return new ShellcheckSourceGraph(nodes);
+    }
+
+    void save(File storeDir) throws IOException {
+        final Properties properties = new Properties();
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            final Node node = entry.getValue();
+            final StringBuilder value = new StringBuilder().append(node.length).append('\0').append(node.lastModified);
+            for (String dependency : node.dependencies) {
+                value.append('\0').append(dependency);
+            }
+            properties.setProperty(entry.getKey(), value.toString());
+        }
+        Files.createDirectories(storeDir.toPath());
+        final File graphFile = new File(storeDir, GRAPH_FILE);
+        final File tmp = new File(storeDir, GRAPH_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            properties.store(out, "Files sourced by every script");
+        }
+        Files.move(tmp.toPath(), graphFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Parses the given scripts and the files they source, when they changed since they were last parsed, and forgets
+     * about the files no longer reachable from them.
+     *
+     * @param sourcePaths the folders given with {@code --source-path}, possibly relative to the working directory
+     */
+    ShellcheckSourceGraph update(Collection<File> scripts, File workingDir, List<String> sourcePaths) throws IOException {
+        final Map<String, Node> reached = new HashMap<>();
+        final Deque<File> queue = new ArrayDeque<>(scripts);
+        while (!queue.isEmpty()) {
+            final File file = queue.poll().getCanonicalFile();
+            if (reached.containsKey(file.getPath()) || !file.isFile()) {
+                continue;
+            }
+            Node node = nodes.get(file.getPath());
+            if (node == null || node.length != file.length() || node.lastModified != file.lastModified()) {
+                node = new Node(file.length(), file.lastModified(), parse(file, workingDir, sourcePaths));
+            }
+            reached.put(file.getPath(), node);
+            for (String dependency : node.dependencies) {
+                queue.add(new File(dependency));
+            }
+        }
+        nodes.clear();
+        nodes.putAll(reached);
+        return this;
+    }
+
+    /**
+     * The files the given script sources, directly or not, sorted by path. Files which do not exist yet are included.
+     */
+    Set<File> dependenciesOf(File script) {
+        final Set<File> dependencies = new TreeSet<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        queue.add(script.getPath());
+        while (!queue.isEmpty()) {
+            final Node node = nodes.get(queue.poll());
+            if (node != null) {
+                for (String dependency : node.dependencies) {
+                    if (!dependency.equals(script.getPath()) && dependencies.add(new File(dependency))) {
+                        queue.add(dependency);
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * The files sourcing any of the given files, directly or not.
+     */
+    Set<File> dependentsOf(Collection<File> changed) {
+        final Map<String, List<String>> sourcedBy = new HashMap<>();
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            for (String dependency : entry.getValue().dependencies) {
+                sourcedBy.computeIfAbsent(dependency, d -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        final Set<File> dependents = new HashSet<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        changed.forEach(file -> queue.add(file.getPath()));
+        while (!queue.isEmpty()) {
+            for (String dependent : sourcedBy.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (dependents.add(new File(dependent))) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Every existing file sourced by any script, sorted by path.
+     */
+    List<File> sourcedFiles() {
+        final Set<File> sourced = new TreeSet<>();
+        for (Node node : nodes.values()) {
+            node.dependencies.stream().map(File::new).filter(File::isFile).forEach(sourced::add);
+        }
+        return new ArrayList<>(sourced);
+    }
+
+    /**
+     * Every file sourced by any script, whether it exists or not.
+     */
+    Set<File> dependencies() {
+        final Set<File> dependencies = new HashSet<>();
+        for (Node node : nodes.values()) {
+            node.dependencies.stream().map(File::new).forEach(dependencies::add);
+        }
+        return dependencies;
+    }
+
+    /**
+     * The folders given to shellcheck through {@code -P} or {@code --source-path} in the additional arguments.
+     */
+    static List<String> sourcePathsOf(String additionalArguments) {
+        final List<String> sourcePaths = new ArrayList<>();
+        final List<String> arguments = ShellcheckArguments.tokenize(additionalArguments);
+        for (int i = 0; i < arguments.size(); i++) {
+            String value = null;
+            if ((arguments.get(i).equals("-P") || arguments.get(i).equals("--source-path")) && i + 1 < arguments.size()) {
+                value = arguments.get(++i);
+            } else if (arguments.get(i).startsWith("--source-path=")) {
+                value = arguments.get(i).substring("--source-path=".length());
+            } else if (arguments.get(i).startsWith("-P")) {
+                value = arguments.get(i).substring(2);
+            }
+            if (value != null) {
+                sourcePaths.addAll(Arrays.asList(value.split(File.pathSeparator)));
+            }
+        }
+        return sourcePaths;
+    }
+
+    private static List<String> parse(File script, File workingDir, List<String> sourcePaths) throws IOException {
+        final Set<String> dependencies = new LinkedHashSet<>();
+        final List<String> searched = new ArrayList<>(sourcePaths);
+        String directive = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(script.toPath()),
+                StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String trimmed = line.trim();
+                final Matcher directiveMatcher = DIRECTIVE.matcher(trimmed);
+                if (directiveMatcher.find()) {
+                    for (String token : directiveMatcher.group(1).split("\\s+")) {
+                        if (token.startsWith("source=")) {
+                            directive = token.substring("source=".length());
+                        } else if (token.startsWith("source-path=")) {
+                            searched.add(token.substring("source-path=".length()));
+                        }
+                    }
+                    continue;
+                }
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                final Matcher command = SOURCE_COMMAND.matcher(trimmed);
+                while (command.find()) {
+                    final String sourced = directive != null ? directive : unquote(firstWord(trimmed, command.end()));
+                    resolve(sourced, script, workingDir, searched, dependencies);
+                }
+                // A directive only applies to the command following it
+                directive = null;
+            }
+        }
+        return new ArrayList<>(dependencies);
+    }
+
+    private static void resolve(String sourced, File script, File workingDir, List<String> searched, Set<String> dependencies) throws IOException {
+        if (sourced.isEmpty() || sourced.equals("/dev/null")) {
+            return;
+        }
+        final File scriptDir = script.getParentFile();
+        final List<File> candidates = new ArrayList<>();
+        final Matcher dynamic = DYNAMIC_PREFIX.matcher(sourced);
+        if (dynamic.find()) {
+            candidates.add(new File(scriptDir, sourced.substring(dynamic.end())));
+        } else if (sourced.startsWith(SCRIPT_DIR + "/")) {
+            candidates.add(new File(scriptDir, sourced.substring(SCRIPT_DIR.length() + 1)));
+        } else if (new File(sourced).isAbsolute()) {
+            candidates.add(new File(sourced));
+        } else if (!sourced.contains("$") && !sourced.contains("`")) {
+            candidates.add(new File(workingDir, sourced));
+            candidates.add(new File(scriptDir, sourced));
+            for (String sourcePath : searched) {
+                final File dir = sourcePath.equals(SCRIPT_DIR) ? scriptDir : new File(sourcePath).isAbsolute() ? new File(sourcePath) : new File(workingDir, sourcePath);
+                candidates.add(new File(dir, sourced));
+            }
+        }
+        // Missing candidates are kept too, as the script depends on them as soon as they are created
+        for (File candidate : candidates) {
+            dependencies.add(candidate.getCanonicalPath());
+        }
+    }
+
+    /**
+     * The word starting at the given index, up to the first whitespace or command separator outside of quotes and
+     * command substitutions.
+     */
+    private static String firstWord(String line, int start) {
+        int depth = 0;
+        char quote = 0;
+        int i = start;
+        for (; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '(' && quote == '"') {
+                    depth++;
+                } else if (c == ')' && quote == '"' && depth > 0) {
+                    depth--;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '{') {
+                depth++;
+            } else if ((c == ')' || c == '}') && depth > 0) {
+                depth--;
+            } else if (depth == 0 && (Character.isWhitespace(c) || c == ';' || c == '&' || c == '|' || c == ')')) {
+                break;
+            }
+        }
+        return line.substring(start, i);
+    }
+
+    private static String unquote(String word) {
+        return word.replace("\"", "").replace("'", "");
+    }
+
+    private static class Node {
+        private final long length;
+        private final long lastModified;
+        private final List<String> dependencies;
+
+        private Node(long length, long lastModified, List<String> dependencies) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Finds the files sourced by the scripts of a task when its inputs are fingerprinted, so that a change to any of
+     * them makes the task run again, even if they are not among its scripts. The graph saved by the last execution
+     * spares parsing unchanged files, but is only updated in memory: the task action is the only one persisting it.
+     */
+    public abstract static class Sourced implements ValueSource<List<File>, Sourced.Parameters> {
+
+        public interface Parameters extends ValueSourceParameters {
+            ConfigurableFileCollection getScripts();
+
+            DirectoryProperty getStoreDir();
+
+            DirectoryProperty getWorkingDir();
+
+            Property<String> getAdditionalArguments();
+        }
+
+        @Override
+        public List<File> obtain() {
+            try {
+                return load(getParameters().getStoreDir().get().getAsFile()).update(getParameters().getScripts().getFiles(),
+                        getParameters().getWorkingDir().get().getAsFile(), sourcePathsOf(getParameters().getAdditionalArguments().get()))
+                        .sourcedFiles();
+            } catch (IOException e) {
+                throw new GradleException("Error while finding the files sourced by the Shellcheck scripts", e);
+            }
+        }
+    }
+}
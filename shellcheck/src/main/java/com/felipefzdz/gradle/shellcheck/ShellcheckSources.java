@@ -0,0 +1,51 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.file.FileCollection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Resolves the shell scripts a {@link Shellcheck} task has to check out of its {@code sources} and {@code sourceFiles}.
+ */
+class ShellcheckSources {
+
+    /**
+     * The canonical scripts to check, sorted by path. Scripts discovered in {@code sources} are combined with the
+     * {@code sourceFiles}, which are taken as they are.
+     */
+    static List<File> resolve(Shellcheck task) throws IOException {
+        return resolve(task, task.getDiscoveredSources().getFiles());
+    }
+
+    /**
+     * Like {@link #resolve(Shellcheck)}, searching {@code sources} again instead of reusing the scripts discovered
+     * before the task started.
+     */
+    static List<File> rediscover(Shellcheck task) throws IOException {
+        return resolve(task, isNullOrEmpty(task.getSources()) ? Collections.emptyList() : ShellcheckSourceDiscovery.of(task).discover(task.getSources().getFiles()));
+    }
+
+    private static List<File> resolve(Shellcheck task, Collection<File> discovered) throws IOException {
+        final Set<File> scripts = new TreeSet<>();
+        for (File script : discovered) {
+            scripts.add(script.getCanonicalFile());
+        }
+        if (!isNullOrEmpty(task.getSourceFiles())) {
+            for (File script : task.getSourceFiles().getFiles()) {
+                scripts.add(script.getCanonicalFile());
+            }
+        }
+        return new ArrayList<>(scripts);
+    }
+
+    static boolean isNullOrEmpty(FileCollection collection) {
+        return collection == null || collection.isEmpty();
+    }
+}
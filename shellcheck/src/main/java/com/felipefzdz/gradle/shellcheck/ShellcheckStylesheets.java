@@ -0,0 +1,57 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiles the custom XSLT stylesheets of HTML reports once, so that tasks using the same stylesheet only pay for
+ * the transformation itself.
+ * <p>
+ * Build services only live as long as a build, so compiled stylesheets are kept in a small cache shared by every
+ * instance, keyed by the content of the stylesheet, and reused across builds run by the same daemon.
+ */
+public abstract class ShellcheckStylesheets implements BuildService<BuildServiceParameters.None> {
+
+    private static final int MAX_COMPILED = 8;
+    private static final Map<String, Templates> COMPILED = new LinkedHashMap<String, Templates>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
+            return size() > MAX_COMPILED;
+        }
+    };
+
+    /**
+     * The compiled form of the given stylesheet, which can be used to create transformers concurrently.
+     */
+    public Templates compile(File stylesheet) throws IOException, TransformerConfigurationException {
+        final String key = stylesheet.getAbsolutePath() + ":" + hashOf(stylesheet);
+        synchronized (COMPILED) {
+            Templates templates = COMPILED.get(key);
+            if (templates == null) {
+                templates = TransformerFactory.newInstance().newTemplates(new StreamSource(stylesheet));
+                COMPILED.put(key, templates);
+            }
+            return templates;
+        }
+    }
+
+    private static String hashOf(File stylesheet) throws IOException {
+        try {
+            return ShellcheckResultStore.toHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(stylesheet.toPath())));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
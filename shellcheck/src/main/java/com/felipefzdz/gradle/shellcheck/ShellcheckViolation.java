@@ -0,0 +1,89 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import java.util.Objects;
+
+/**
+ * A single comment reported by shellcheck for a given file, as described by its {@code json1} output format.
+ */
+public class ShellcheckViolation {
+    private final String file;
+    private final int line;
+    private final int endLine;
+    private final int column;
+    private final int endColumn;
+    private final String level;
+    private final int code;
+    private final String message;
+
+    public ShellcheckViolation(String file, int line, int endLine, int column, int endColumn, String level, int code, String message) {
+        this.file = file;
+        this.line = line;
+        this.endLine = endLine;
+        this.column = column;
+        this.endColumn = endColumn;
+        this.level = level;
+        this.code = code;
+        this.message = message;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getEndLine() {
+        return endLine;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    /**
+     * The shellcheck severity of this violation: error, warning, info or style.
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * The rule identifier as shown by shellcheck, e.g. {@code SC2086}.
+     */
+    public String getRule() {
+        return "SC" + code;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final ShellcheckViolation that = (ShellcheckViolation) o;
+        return line == that.line && endLine == that.endLine && column == that.column && endColumn == that.endColumn
+                && code == that.code && Objects.equals(file, that.file) && Objects.equals(level, that.level)
+                && Objects.equals(message, that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(file, line, endLine, column, endColumn, level, code, message);
+    }
+}
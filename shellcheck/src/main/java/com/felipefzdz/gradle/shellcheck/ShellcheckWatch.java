@@ -0,0 +1,36 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.InputChanges;
+
+import java.time.Duration;
+
+/**
+ * Checks the scripts, then keeps watching them, checking again the scripts affected by every change and updating the
+ * reports in place, until the build is cancelled, which interrupts the task, or {@code idleTimeout} runs out.
+ * <p>
+ * Gradle configuration, the discovery of the scripts and the start of shellcheck are only paid once: changes are
+ * picked up through a {@link java.nio.file.WatchService}, only the changed scripts and the scripts sourcing a changed
+ * file go through shellcheck again, and shellcheck keeps running from the same container when Docker is used.
+ */
+public abstract class ShellcheckWatch extends Shellcheck {
+
+    public ShellcheckWatch() {
+        getOutputs().upToDateWhen(task -> false);
+        getOutputs().doNotCacheIf("Watches the scripts until the build is cancelled", task -> true);
+    }
+
+    @Override
+    @TaskAction
+    public void run(InputChanges inputChanges) {
+        new ShellcheckWatcher(this).watch();
+    }
+
+    /**
+     * How long to keep watching once the scripts stop changing. Watches until the build is cancelled when not set.
+     */
+    @Internal
+    public abstract Property<Duration> getIdleTimeout();
+}
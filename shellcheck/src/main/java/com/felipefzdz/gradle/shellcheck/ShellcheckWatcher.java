@@ -0,0 +1,209 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * The loop of a {@link ShellcheckWatch} task.
+ * <p>
+ * Every folder of {@code sources} is watched, along with the folders of the {@code sourceFiles}, of the files sourced
+ * by the scripts and of their shellcheckrc files. Events are collected until none arrives for a short quiet period, so
+ * that saving several files at once, or an editor writing a file in several steps, only checks the scripts once.
+ * Scripts created in {@code sources} are picked up without searching the folders again, unless whole folders are
+ * created or removed. Watching stops when the thread running the task is interrupted, as Gradle does when the build
+ * is cancelled.
+ */
+class ShellcheckWatcher {
+
+    private static final long QUIET_PERIOD_MILLIS = 100;
+    private static final String RCFILE = ".shellcheckrc";
+
+    private final ShellcheckWatch task;
+    private final ShellcheckSourceDiscovery discovery;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Set<Path> registered = new HashSet<>();
+    private final List<File> roots = new ArrayList<>();
+    private final Set<File> sourceFiles = new HashSet<>();
+    private Set<File> sources;
+    private Set<File> sourced = new HashSet<>();
+
+    ShellcheckWatcher(ShellcheckWatch task) {
+        this.task = task;
+        this.discovery = ShellcheckSourceDiscovery.of(task);
+    }
+
+    void watch() {
+        final Duration idleTimeout = task.getIdleTimeout().getOrNull();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (File root : task.getSources().getFiles()) {
+                roots.add(root.getCanonicalFile());
+            }
+            if (!ShellcheckSources.isNullOrEmpty(task.getSourceFiles())) {
+                for (File sourceFile : task.getSourceFiles().getFiles()) {
+                    sourceFiles.add(sourceFile.getCanonicalFile());
+                }
+            }
+            sources = new TreeSet<>(ShellcheckSources.resolve(task));
+            check(null);
+            register(watchService, true);
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey first = idleTimeout == null ?
+                        watchService.take() : watchService.poll(idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    task.getLogger().lifecycle("Shellcheck stopped watching after {} seconds without changes", idleTimeout.getSeconds());
+                    return;
+                }
+                final Changes changes = new Changes();
+                for (WatchKey key = first; key != null; key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) {
+                    collect(key, changes);
+                }
+                if (changes.rediscover) {
+                    sources = new TreeSet<>(ShellcheckSources.rediscover(task));
+                }
+                if (changes.everything || changes.rediscover || changes.sources
+                        || changes.files.stream().anyMatch(file -> sources.contains(file) || sourced.contains(file))) {
+                    check(changes.everything ? null : changes.files);
+                    register(watchService, changes.rediscover);
+                }
+            }
+            task.getLogger().lifecycle("Shellcheck stopped watching");
+        } catch (IOException e) {
+            throw new GradleException("Error while watching the scripts", e);
+        } catch (InterruptedException e) {
+            task.getLogger().lifecycle("Shellcheck stopped watching");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks the scripts affected by the given changed files, or every script when null, and updates the reports.
+     * Violations do not stop the watch.
+     */
+    private void check(Set<File> changed) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            ShellcheckInvoker.invoke(task, new ArrayList<>(sources), changed);
+        } catch (GradleException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+            }
+            task.getLogger().error(e.getMessage());
+        }
+        sourced = ShellcheckSourceGraph.load(task.getResultStoreDir()).dependencies();
+        task.getLogger().lifecycle("Shellcheck checked {} scripts in {} ms, watching for changes",
+                changed == null ? "all the" : "the changed", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void collect(WatchKey key, Changes changes) throws IOException {
+        final Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) {
+                changes.everything = true;
+                changes.rediscover = true;
+                continue;
+            }
+            final Path path = directory.resolve((Path) event.context());
+            final File file = path.toFile();
+            changes.files.add(file);
+            if (RCFILE.equals(file.getName())) {
+                changes.everything = true;
+            }
+            if (event.kind() == ENTRY_DELETE) {
+                if (sources.remove(file)) {
+                    changes.sources = true;
+                } else if (sources.stream().anyMatch(source -> source.toPath().startsWith(path))) {
+                    changes.rediscover = true;
+                }
+            } else if (Files.isDirectory(path)) {
+                changes.rediscover |= event.kind() == ENTRY_CREATE && rootOf(file) != null;
+            } else if (!sourceFiles.contains(file)) {
+                final File root = rootOf(file);
+                changes.sources |= root != null && discovery.accepts(root, file) ? sources.add(file) : sources.remove(file);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+            registered.remove(directory);
+        }
+    }
+
+    private File rootOf(File file) {
+        for (File root : roots) {
+            if (file.toPath().startsWith(root.toPath()) && !file.equals(root)) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Watches the folders of the scripts and of every file they depend on which are not watched yet, walking the
+     * folders of {@code sources} when {@code walk} is set.
+     */
+    private void register(WatchService watchService, boolean walk) throws IOException {
+        for (File root : walk ? roots : Collections.<File>emptyList()) {
+            if (root.isDirectory()) {
+                Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                        if (ShellcheckSourceDiscovery.isIgnored(dir)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        register(watchService, dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else {
+                register(watchService, root.toPath().getParent());
+            }
+        }
+        final Set<File> files = new HashSet<>(sources);
+        files.addAll(sourced);
+        files.addAll(ShellcheckRcFiles.of(task).rcfilesOf(sources));
+        for (File file : files) {
+            register(watchService, file.toPath().getParent());
+        }
+    }
+
+    private void register(WatchService watchService, Path directory) throws IOException {
+        if (directory != null && !registered.contains(directory) && Files.isDirectory(directory)) {
+            directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+            registered.add(directory);
+        }
+    }
+
+    private static class Changes {
+        private final Set<File> files = new HashSet<>();
+        private boolean everything;
+        private boolean rediscover;
+        private boolean sources;
+    }
+}
@@ -0,0 +1,173 @@
+package com.felipefzdz.gradle.shellcheck;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static com.felipefzdz.gradle.shellcheck.Shell.stream;
+
+/**
+ * Runs shellcheck over one shard of the scripts to check, in as many batches as the command line length requires,
+ * streaming the raw output of every batch into a file which is handed over to the task through a {@link ShellcheckPipeline}.
+ * <p>
+ * A batch running for longer than the invocation timeout is destroyed and checked again in two halves, down to the
+ * single scripts shellcheck gets stuck on, which fail the shard once the rest of it has been checked. Running
+ * past the deadline of the task fails the shard straight away.
+ */
+public abstract class ShellcheckWorkAction implements WorkAction<ShellcheckWorkAction.Parameters> {
+
+    private static final Logger LOGGER = Logging.getLogger(ShellcheckWorkAction.class);
+
+    public interface Parameters extends WorkParameters {
+        /**
+         * The command to run shellcheck, to which the scripts of every batch are appended.
+         */
+        ListProperty<String> getCommand();
+
+        DirectoryProperty getWorkingDir();
+
+        ListProperty<String> getScripts();
+
+        Property<Integer> getMaxFilesPerInvocation();
+
+        Property<Duration> getInvocationTimeout();
+
+        /**
+         * The {@link System#nanoTime()} by which every shellcheck process of the task has to be done, which is only
+         * meaningful because workers run in the same JVM as the task.
+         */
+        Property<Long> getDeadline();
+
+        DirectoryProperty getOutputDir();
+
+        /**
+         * The {@link ShellcheckPipeline} to post the output of every batch to, as soon as it is done.
+         */
+        Property<String> getPipelineId();
+
+        /**
+         * The build-wide slots every shellcheck process has to take before being started.
+         */
+        Property<ShellcheckProcessSlots> getProcessSlots();
+    }
+
+    @Override
+    public void execute() {
+        final Parameters parameters = getParameters();
+        final List<String> command = parameters.getCommand().get();
+        final String pipelineId = parameters.getPipelineId().get();
+        try {
+            final Deque<List<String>> batches = new ArrayDeque<>(ShellcheckBatchPlanner.plan(parameters.getScripts().get(), command,
+                    parameters.getMaxFilesPerInvocation().get()));
+            final List<String> stuck = new ArrayList<>();
+            for (int i = 0; !batches.isEmpty() && !ShellcheckPipeline.isCancelled(pipelineId); i++) {
+                final List<String> batch = batches.removeFirst();
+                final List<String> batchCommand = new ArrayList<>(command);
+                batchCommand.addAll(batch);
+                LOGGER.debug("Command to run Shellcheck: " + String.join(" ", batchCommand));
+                final File outputFile = parameters.getOutputDir().file("batch-" + i + ".out").get().getAsFile();
+                final Process[] process = new Process[1];
+                final Shell.Result result;
+                final long nanos;
+                try (ShellcheckProcessSlots.Slot ignored = parameters.getProcessSlots().get().acquire()) {
+                    if (ShellcheckPipeline.isCancelled(pipelineId)) {
+                        return;
+                    }
+                    final long start = System.nanoTime();
+                    result = stream(batchCommand, parameters.getWorkingDir().getAsFile().get(), LOGGER,
+                            stdout -> Files.copy(stdout, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING),
+                            started -> ShellcheckPipeline.track(pipelineId, process[0] = started), timeoutNanos(parameters));
+                    nanos = System.nanoTime() - start;
+                } catch (Shell.TimeoutException e) {
+                    if (pastDeadline(parameters) || !parameters.getInvocationTimeout().isPresent()) {
+                        throw new GradleException(String.format("Shellcheck did not finish within the taskTimeout, it was still checking %s",
+                                String.join(", ", batch)), e);
+                    }
+                    final Duration timeout = parameters.getInvocationTimeout().get();
+                    if (batch.size() == 1) {
+                        LOGGER.warn("Shellcheck did not finish checking {} within the invocationTimeout of {} ms", batch.get(0), timeout.toMillis());
+                        stuck.add(batch.get(0));
+                    } else {
+                        LOGGER.warn("Shellcheck did not finish checking {} files within the invocationTimeout of {} ms, checking them again in two halves",
+                                batch.size(), timeout.toMillis());
+                        batches.addFirst(batch.subList(batch.size() / 2, batch.size()));
+                        batches.addFirst(batch.subList(0, batch.size() / 2));
+                    }
+                    continue;
+                } finally {
+                    if (process[0] != null) {
+                        ShellcheckPipeline.untrack(pipelineId, process[0]);
+                    }
+                }
+                if (ShellcheckPipeline.isCancelled(pipelineId)) {
+                    return;
+                }
+                // Shellcheck exits with 1 when there are violations and 2 when some files could not be checked, whose
+                // output would otherwise pass them for clean and get them stored as such
+                if (result.getExitCode() == 2) {
+                    throw new GradleException(String.format("Shellcheck could not check some of %s: %s", String.join(", ", batch),
+                            result.getStderr().isEmpty() ? "exit code 2" : result.getStderr()));
+                }
+                if (result.getExitCode() > 2) {
+                    throw new GradleException(String.format("Error while executing shellcheck: %s",
+                            result.getStderr().isEmpty() ? "exit code " + result.getExitCode() : result.getStderr()));
+                }
+                if (!result.getStderr().isEmpty()) {
+                    LOGGER.info("Shellcheck reported: {}", result.getStderr());
+                }
+                ShellcheckPipeline.post(pipelineId, new ShellcheckPipeline.Batch(outputFile, batch, nanos));
+            }
+            if (!stuck.isEmpty() && !ShellcheckPipeline.isCancelled(pipelineId)) {
+                throw new GradleException(String.format("Shellcheck did not finish checking %s within the invocationTimeout of %d ms",
+                        String.join(", ", stuck), parameters.getInvocationTimeout().get().toMillis()));
+            }
+        } catch (IOException | InterruptedException e) {
+            // Destroying the processes of a cancelled pipeline breaks their streams
+            if (!ShellcheckPipeline.isCancelled(pipelineId)) {
+                throw new GradleException("Error while running Shellcheck", e);
+            }
+        } finally {
+            shardDone(pipelineId);
+        }
+    }
+
+    /**
+     * The time the next shellcheck process may run for, bounded by both timeouts, or zero when there is none.
+     */
+    private static long timeoutNanos(Parameters parameters) {
+        long timeout = parameters.getInvocationTimeout().map(Duration::toNanos).getOrElse(0L);
+        if (parameters.getDeadline().isPresent()) {
+            // A deadline already gone by leaves the process a nanosecond, timing it out straight away
+            final long remaining = Math.max(1, parameters.getDeadline().get() - System.nanoTime());
+            timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+        }
+        return timeout;
+    }
+
+    private static boolean pastDeadline(Parameters parameters) {
+        return parameters.getDeadline().isPresent() && System.nanoTime() - parameters.getDeadline().get() >= 0;
+    }
+
+    private static void shardDone(String pipelineId) {
+        try {
+            ShellcheckPipeline.shardDone(pipelineId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.felipefzdz.gradle.shellcheck
+
+import org.gradle.api.logging.Logging
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+class ShellTest extends Specification {
+
+    static final long HUNDRED_MB = 100L * 1024 * 1024
+
+    def logger = Logging.getLogger(ShellTest)
+    def workingDir = new File(".").absoluteFile
+
+    def "stream 100MB of output without growing the heap"() {
+        given:
+        def memory = ManagementFactory.memoryMXBean
+        System.gc()
+        def heapBefore = memory.heapMemoryUsage.used
+        long read = 0
+        long heapPeak = heapBefore
+
+        when:
+        def result = Shell.stream(["sh", "-c", "yes shellcheck | head -c $HUNDRED_MB"], workingDir, logger) { stdout ->
+            def buffer = new byte[8192]
+            int chunk
+            while ((chunk = stdout.read(buffer)) != -1) {
+                read += chunk
+                if (read % (10 * 1024 * 1024) < chunk) {
+                    System.gc()
+                    heapPeak = Math.max(heapPeak, memory.heapMemoryUsage.used)
+                }
+            }
+        }
+
+        then:
+        result.exitCode == 0
+        read == HUNDRED_MB
+        heapPeak - heapBefore < 32 * 1024 * 1024
+    }
+
+    def "keep stderr apart from the streamed stdout"() {
+        when:
+        def stdout = new ByteArrayOutputStream()
+        def result = Shell.stream(["sh", "-c", "echo out; echo err >&2; exit 3"], workingDir, logger) { stdout << it }
+
+        then:
+        stdout.toString("UTF-8").trim() == "out"
+        result.stderr == "err"
+        result.exitCode == 3
+    }
+
+    def "discard the output the consumer leaves unread"() {
+        when:
+        def result = Shell.stream(["sh", "-c", "yes | head -c 1048576; echo done >&2"], workingDir, logger) { }
+
+        then:
+        result.exitCode == 0
+        result.stderr == "done"
+    }
+}
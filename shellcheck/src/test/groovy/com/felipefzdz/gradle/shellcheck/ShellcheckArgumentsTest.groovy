@@ -0,0 +1,29 @@
+package com.felipefzdz.gradle.shellcheck
+
+import org.gradle.api.GradleException
+import spock.lang.Specification
+
+class ShellcheckArgumentsTest extends Specification {
+
+    def "split the additional arguments the way a shell would, without expanding them"() {
+        expect:
+        ShellcheckArguments.tokenize(arguments) == tokens
+
+        where:
+        arguments                                      | tokens
+        ""                                             | []
+        "  -a   -x "                                   | ["-a", "-x"]
+        "--exclude=SC1090,SC1091 -P 'dir with spaces'" | ["--exclude=SC1090,SC1091", "-P", "dir with spaces"]
+        '-P "$HOME/lib" --rcfile=a\\ b'                | ["-P", '$HOME/lib', "--rcfile=a b"]
+        '-e "SC\\"2086" \'\''                          | ["-e", 'SC"2086', ""]
+    }
+
+    def "fail on an unterminated quote"() {
+        when:
+        ShellcheckArguments.tokenize("-P 'lib")
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Unterminated ' quote in the Shellcheck additionalArguments: -P 'lib"
+    }
+}
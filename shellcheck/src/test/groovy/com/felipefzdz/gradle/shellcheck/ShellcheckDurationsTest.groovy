@@ -0,0 +1,77 @@
+package com.felipefzdz.gradle.shellcheck
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class ShellcheckDurationsTest extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    File root
+
+    def setup() {
+        root = temporaryFolder.root.canonicalFile
+    }
+
+    def "balance shards by the recorded durations rather than by size"() {
+        given:
+        def slow = file("slow.sh", "x" * 10)
+        def big = (1..4).collect { file("big${it}.sh", "x" * 1000) }
+        def durations = ShellcheckDurations.load(store())
+        durations.record([slow.path], 2_000)
+        big.each { durations.record([it.path], 400) }
+        durations.save(store(), [slow] + big)
+
+        when:
+        def shards = ShellcheckShardPlanner.plan([slow] + big, 2, ShellcheckDurations.load(store())::estimate)
+
+        then:
+        shards == [[slow], big]
+    }
+
+    def "estimate unseen scripts from their size and scale recorded durations with it"() {
+        given:
+        def seen = file("seen.sh", "x" * 100)
+        def durations = ShellcheckDurations.load(store())
+        durations.record([seen.path], 1_000)
+        durations.save(store(), [seen])
+        def unseen = file("unseen.sh", "x" * 50)
+        seen.text = "x" * 200
+
+        when:
+        def loaded = ShellcheckDurations.load(store())
+
+        then:
+        loaded.estimate(unseen) == 500
+        loaded.estimate(seen) == 2_000
+    }
+
+    def "split the duration of a process by the estimated durations of its scripts"() {
+        given:
+        def first = file("first.sh", "x" * 300)
+        def second = file("second.sh", "x" * 100)
+        def durations = ShellcheckDurations.load(store())
+
+        when:
+        durations.record([first.path, second.path], 800)
+        durations.save(store(), [first, second])
+        def loaded = ShellcheckDurations.load(store())
+
+        then:
+        loaded.estimate(first) == 600
+        loaded.estimate(second) == 200
+    }
+
+    private File file(String path, String content) {
+        def file = new File(root, path)
+        file.parentFile.mkdirs()
+        file.text = content
+        file
+    }
+
+    private File store() {
+        new File(root, "build/shellcheck/shellcheck")
+    }
+}
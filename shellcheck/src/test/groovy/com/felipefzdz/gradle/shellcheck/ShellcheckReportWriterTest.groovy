@@ -0,0 +1,37 @@
+package com.felipefzdz.gradle.shellcheck
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class ShellcheckReportWriterTest extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    def "write expected files in the order of their paths whatever the order they are handed over in"() {
+        given:
+        def xml = new File(temporaryFolder.root, "shellcheck.xml")
+        def writer = new ShellcheckReportWriter(xml, null, null, null, temporaryFolder.root, new ShellcheckMetrics(false))
+        writer.orderBy(["a.sh", "b.sh", "c.sh", "d.sh"])
+
+        when:
+        writer.write("c.sh", [violation("c.sh", "error")])
+        writer.write("a.sh", [violation("a.sh", "info")])
+        writer.write("b.sh", [])
+
+        then:
+        writer.errors == 1
+        writer.warnings == 1
+
+        when:
+        writer.close()
+
+        then:
+        (xml.text =~ /name="([^"]+)"/).collect { it[1] } == ["a.sh", "c.sh"]
+    }
+
+    private static ShellcheckViolation violation(String file, String level) {
+        new ShellcheckViolation(file, 1, 1, 1, 2, level, 2086, "Double quote to prevent globbing and word splitting.")
+    }
+}
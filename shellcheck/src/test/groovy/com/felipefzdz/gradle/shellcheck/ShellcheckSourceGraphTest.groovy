@@ -0,0 +1,94 @@
+package com.felipefzdz.gradle.shellcheck
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class ShellcheckSourceGraphTest extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    File root
+
+    def setup() {
+        root = temporaryFolder.root.canonicalFile
+    }
+
+    def "find the files sourced by a script, directly or through other libraries"() {
+        given:
+        def script = file("bin/deploy.sh", """#!/usr/bin/env bash
+source lib/common.sh
+if true; then . "\$(dirname "\$0")/helpers.sh"; fi
+# shellcheck source=lib/annotated.sh
+. "\$LIB_DIR/annotated.sh"
+""")
+        file("lib/common.sh", ". lib/nested.sh\n")
+        file("lib/nested.sh", "echo nested\n")
+        file("lib/annotated.sh", "echo annotated\n")
+        file("bin/helpers.sh", "echo helpers\n")
+
+        when:
+        def graph = ShellcheckSourceGraph.load(store()).update([script], root, [])
+
+        then:
+        graph.dependenciesOf(script).findAll { it.isFile() } == files("bin/helpers.sh", "lib/annotated.sh", "lib/common.sh", "lib/nested.sh")
+        graph.sourcedFiles() as Set == files("bin/helpers.sh", "lib/annotated.sh", "lib/common.sh", "lib/nested.sh")
+    }
+
+    def "find the transitive dependents of changed libraries"() {
+        given:
+        def sourcing = file("sourcing.sh", "source lib/common.sh\n")
+        def standalone = file("standalone.sh", "echo standalone\n")
+        file("lib/common.sh", "source lib/nested.sh\n")
+        file("lib/nested.sh", "echo nested\n")
+
+        when:
+        def graph = ShellcheckSourceGraph.load(store()).update([sourcing, standalone], root, [])
+
+        then:
+        graph.dependentsOf(files("lib/nested.sh")) == files("lib/common.sh", "sourcing.sh")
+        graph.dependentsOf([standalone]).isEmpty()
+    }
+
+    def "keep the graph between executions and notice libraries created later"() {
+        given:
+        def script = file("script.sh", "source lib/common.sh\n")
+        ShellcheckSourceGraph.load(store()).update([script], root, []).save(store())
+
+        when:
+        file("lib/common.sh", "echo common\n")
+        def graph = ShellcheckSourceGraph.load(store())
+
+        then:
+        graph.dependentsOf(files("lib/common.sh")) == [script] as Set
+        graph.update([script], root, []).sourcedFiles() == [new File(root, "lib/common.sh")]
+    }
+
+    def "read the source paths from the additional arguments"() {
+        expect:
+        ShellcheckSourceGraph.sourcePathsOf(arguments) == sourcePaths
+
+        where:
+        arguments                                  | sourcePaths
+        ""                                         | []
+        "-x -P lib"                                | ["lib"]
+        "-x -Plib --source-path=SCRIPTDIR/include" | ["lib", "SCRIPTDIR/include"]
+        "--source-path lib -e SC2086"              | ["lib"]
+    }
+
+    private File file(String path, String content) {
+        def file = new File(root, path)
+        file.parentFile.mkdirs()
+        file.text = content
+        file
+    }
+
+    private Set<File> files(String... paths) {
+        paths.collect { new File(root, it) } as Set
+    }
+
+    private File store() {
+        new File(root, "build/shellcheck/shellcheck")
+    }
+}